@@ -122,9 +122,6 @@ public final class Options {
 	public static final boolean TRANSACTIFYJDK = !getOption("nojdkchanges",
 		"(DEBUG) disable transactification of some JDK classes (JDK changes are enabled by default if the" +
 		"'JDK_HACK_PACKAGE' environment variable is defined)") && (System.getenv("JDK_HACK_PACKAGE") != null);
-	// ReadMap: Usar HashMap para manter read-set
-	public static final boolean READMAP = getOption("readmap",
-		"(PERFORMANCE,EXPERIMENTAL) use hashmap instead of linked-list to represent transaction read-sets");
 	// HybridQueue: Queue experimental que troca entre AlternativeQueue e a SynchronousQueue.
 	public static final boolean HYBRIDQUEUE = !getOption("notaskbuffering",
 		"forces thread pool task buffering to off (replaces -alternativequeue/-hybridqueue)");
@@ -145,11 +142,144 @@ public final class Options {
 	public static final boolean NOFREEZE = getOption("nofreeze",
 		"(DEBUG) disable speculation freeze");
 
+	// IncrementalValidation: Transacções especulativas são re-validadas periodicamente (e em cada spawnSpeculation),
+	//			    para que especulações que já leram valores inválidos sejam aborted logo
+	public static final boolean INCREMENTALVALIDATION = getOption("incrementalvalidation",
+		"(PERFORMANCE,EXPERIMENTAL) periodically re-validate speculative transactions, aborting doomed " +
+		"speculations early instead of at commit time");
+
+	// EagerInvalidation: Escritas fora de transacções marcam as transacções especulativas que leram a mesma
+	//		     posição, que são re-validadas (e aborted) logo no acesso seguinte
+	public static final boolean EAGERINVALIDATION = getOption("eagerinvalidation",
+		"(PERFORMANCE,EXPERIMENTAL) non-speculative writes signal speculative transactions that read the " +
+		"same location, which are then re-validated at their next access instead of at commit time");
+
+	// Checkpoints: Transacções especulativas longas guardam checkpoints (continuações) periodicamente; quando a
+	//		validação falha, só é re-executado o trabalho feito depois do último checkpoint válido
+	public static final boolean CHECKPOINTS = getOption("checkpoints",
+		"(PERFORMANCE,EXPERIMENTAL) periodically checkpoint long speculative transactions, so that when " +
+		"validation fails only the work done after the last valid checkpoint is re-executed " +
+		"(incompatible with -detectlocal and -nttracker)") && requires(!DETECTLOCAL, !NTTRACKER);
+
+	// ParallelCommit: Validação e writeback de transacções muito grandes são divididos por várias threads
+	public static final boolean PARALLELCOMMIT = getOption("parallelcommit",
+		"(PERFORMANCE,EXPERIMENTAL) split the validation and writeback of very large transactions " +
+		"across multiple threads");
+
+	// Orecs: Leituras especulativas registam também a versão (num ownership record global) da posição lida, para
+	//	  que a validação só precise de comparar os valores de posições que foram escritas entretanto
+	public static final boolean ORECS = getOption("orecs",
+		"(PERFORMANCE,EXPERIMENTAL) log ownership-record versions with speculative reads, so that validation " +
+		"only compares values for locations written since (does not notice writes done by native code)");
+
+	// MultiVersion: Escritas especulativas em posições "quentes" (marcadas com a tag multiversion: na skiplist, ou
+	//		 que causaram falhas de validação) são passadas directamente às especulações seguintes
+	public static final boolean MULTIVERSION = getOption("multiversion",
+		"(PERFORMANCE,EXPERIMENTAL) forward speculative writes to hot fields (tagged with multiversion: in " +
+		"the skiplist, or that caused validation failures) to the speculations that follow in program order");
+
+	// EscapeAnalysis: Análise estática (na transactificação) que detecta objectos alocados no próprio método que
+	//		   ainda não escaparam, e cujos acessos podem ser feitos sem passar pela STM
+	public static final boolean ESCAPEANALYSIS = getOption("escapeanalysis",
+		"(PERFORMANCE,EXPERIMENTAL) use a transform-time escape analysis to access objects and arrays allocated " +
+		"by the current method without STM barriers (incompatible with -checkpoints)") && requires(!CHECKPOINTS);
+
+	// EffectivelyFinal: Fields que só são escritos nos constructores (ou <clinit>) da classe que os declara são
+	//		    tratados como final; leituras não são registadas no read-set (ver FieldGuard)
+	public static final boolean EFFECTIVELYFINAL = getOption("effectivelyfinal",
+		"(PERFORMANCE,EXPERIMENTAL) treat fields that are only written by the constructors (or static " +
+		"initializer) of their class as final, and do not log their reads");
+
+	// LoadElimination: Leituras transaccionais repetidas (sem escritas ou invocações entre elas) reutilizam o valor da
+	//		    primeira, e leituras invariantes são movidas para fora dos ciclos
+	public static final boolean LOADELIMINATION = getOption("loadelimination",
+		"(PERFORMANCE,EXPERIMENTAL) reuse the value of repeated transactional reads with no stores or calls " +
+		"between them, and hoist loop-invariant reads out of loops");
+
+	// IndyBarriers: Barreiras de leitura são call sites invokedynamic, que enquanto nenhuma transacção está activa
+	//		 são ligados a um acesso directo, guardado por um SwitchPoint (ver BarrierSwitch)
+	public static final boolean INDYBARRIERS = getOption("indybarriers",
+		"(PERFORMANCE,EXPERIMENTAL) emit read barriers as invokedynamic call sites that are linked to direct " +
+		"accesses while no speculation is live (upgrades transactified classes to Java 7)");
+
+	// BarrierFreeNonSpec: Métodos $non_speculative têm uma cópia do seu código sem barreiras de leitura, que é usada
+	//		      quando são executados fora de uma transacção
+	public static final boolean BARRIERFREENONSPEC = getOption("barrierfreenonspec",
+		"(PERFORMANCE,EXPERIMENTAL) add to $non_speculative methods a copy of their code without read barriers, " +
+		"used when they run outside of a transaction");
+
+	// PrimitiveFutures: Especulações de métodos que retornam tipos primitivos (ou void) passam o resultado codificado num
+	//		   long, sem boxing no Callable nem unboxing no get() (ver PrimitiveFuture)
+	public static final boolean PRIMITIVEFUTURES = getOption("primitivefutures",
+		"(PERFORMANCE,EXPERIMENTAL) pass the results of speculated methods returning primitives (or void) " +
+		"without boxing them (incompatible with -rvp)") && requires(!RVP);
+
+	// IndySpawn: Callables para especulação são criados por call sites invokedynamic a partir de MethodHandles, em vez
+	//	    de ser gerada uma classe Codegen para cada método invocado especulativamente (ver IndySpawnHelper)
+	public static final boolean INDYSPAWN = getOption("indyspawn",
+		"(PERFORMANCE,EXPERIMENTAL) create speculation tasks through invokedynamic call sites instead of " +
+		"generating a wrapper class per speculated method (upgrades classes to Java 7, incompatible with -rvp)")
+		&& requires(!RVP);
+
+	// AdaptiveSpawn: Spawn sites cujas especulações falham demasiado ou são demasiado pequenas são desactivados
+	//		durante um número crescente de spawns (ver SpawnSiteController)
+	public static final boolean ADAPTIVESPAWN = getOption("adaptivespawn",
+		"(PERFORMANCE,EXPERIMENTAL) track the commit ratio and task size of each spawn site, and stop " +
+		"speculating at unprofitable sites, probing them again with exponential back-off");
+
+	// TieredSpawn: Métodos $speculative em que todos os spawn sites foram abandonados pelo -adaptivespawn passam a
+	//		delegar na sua versão $non_speculative, através de um call site mutável (ver IndySpawnHelper)
+	public static final boolean TIEREDSPAWN = getOption("tieredspawn",
+		"(PERFORMANCE,EXPERIMENTAL) once every spawn site of a method has been unprofitable for a long time, " +
+		"switch that method to its non-speculative version (requires -indyspawn and -adaptivespawn)")
+		&& requires(INDYSPAWN, ADAPTIVESPAWN);
+
+	// WorkStealing: Tasks são executadas por um scheduler com uma queue por worker e work stealing, ordenadas por program
+	//		 order, em vez do ThreadPoolExecutor e do DeadlockDetectorThread (ver Executor.WorkStealingPool)
+	public static final boolean WORKSTEALING = getOption("workstealing",
+		"(PERFORMANCE,EXPERIMENTAL) run speculation tasks on per-worker queues with work stealing, always " +
+		"picking the least speculative buffered task (incompatible with -notaskbuffering)") && requires(HYBRIDQUEUE);
+
+	// Preemption: Tasks distantes do head cedem a thread (fazendo freeze) quando existe uma task buffered que as precede
+	//	       em program order (ver SpeculationTask.preempt)
+	public static final boolean PREEMPTION = getOption("preemption",
+		"(PERFORMANCE,EXPERIMENTAL) freeze speculation tasks that are far from program order when a less " +
+		"speculative task is waiting for a thread (requires -workstealing, incompatible with -nofreeze)")
+		&& requires(WORKSTEALING, !NOFREEZE);
+
+	// SpinHandoff: Tasks esperam pelo resultado do parent fazendo spin durante um tempo calibrado e depois park, em vez
+	//		de usarem wait()/notifyAll() no monitor da SpeculationTask
+	public static final boolean SPINHANDOFF = getOption("spinhandoff",
+		"(PERFORMANCE,EXPERIMENTAL) wait for the result of the parent task with an adaptive spin followed by " +
+		"park, instead of wait/notifyAll on the task monitor (incompatible with -profile)") && requires(!PROFILE);
+
+	// EarlyCommitInterval: A verificação do SignalEarlyCommit é feita apenas a cada N barreiras, usando um contador na
+	//			transacção, em vez de consultar a SpeculationTask em cada acesso
+	public static final int EARLYCOMMITINTERVAL = positiveInt(getStringOption("earlycommitinterval",
+		"(PERFORMANCE,EXPERIMENTAL) =N, check if the current speculation can already commit only every N " +
+		"transactional reads and writes (default 1), bounding the early commit latency to N accesses"), 1);
+
+	// AsyncCommit: Commit de tasks que terminaram antes do parent é feito por uma thread dedicada (ver Committer), em
+	//		vez de ser feito pela thread do parent, que volta logo à pool
+	public static final boolean ASYNCCOMMIT = getOption("asynccommit",
+		"(PERFORMANCE,EXPERIMENTAL) validate and write back finished speculations in program order on a " +
+		"dedicated committer thread, so that workers return to the pool right away (incompatible with " +
+		"-nofreeze, -profile and -workstealing)") && requires(!NOFREEZE, !PROFILE, !WORKSTEALING);
+
 	/** Evil init method, usado para obrigar a classe a ser carregada na VM e as opções
 	  * acima serem inicializadas.
 	  **/
 	static void init() { }
 
+	private static int positiveInt(String value, int defaultValue) {
+		if (value == null) return defaultValue;
+		try {
+			int i = Integer.parseInt(value);
+			if (i > 0) return i;
+		} catch (NumberFormatException e) { }
+		throw new RuntimeException("Invalid option value: " + value);
+	}
+
 	private static boolean requires(Boolean ... values) {
 		for (boolean b : values) {
 			if (!b) throw new RuntimeException("Invalid option for current configuration");
@@ -0,0 +1,227 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.speculation;
+
+import java.util.*;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/** MethodVisitor usado pelo -barrierfreenonspec para acrescentar aos métodos $non_speculative uma cópia
+  * do seu código sem barreiras de leitura.
+  *
+  * Os métodos $non_speculative normalmente correm fora de transacções, mas não é sempre assim: são
+  * chamados pelo <clinit> (que pode ser executado por uma especulação) e pelo workaround para
+  * overspeculation em métodos recursivos do InsertContinuationSpeculationMethodVisitor. Por isso o
+  * método passa a começar por testar se existe uma transacção activa, e apenas quando não existe salta
+  * para a cópia, que é obtida a partir do código transactificado desfazendo as sequências geradas pelo
+  * ChangeFieldAccessMethodVisitor e ChangeArrayAccessMethodVisitor (ou pelo IndyBarrierMethodVisitor):
+  *
+  *   DUP; GETFIELD f; GETSTATIC $offset_f; [SIPUSH guard]; load*; [CHECKCAST]  ->  GETFIELD f
+  *   GETSTATIC $staticFieldBase; GETSTATIC f; GETSTATIC $offset_f; [SIPUSH]; load*; [CHECKCAST]  ->  GETSTATIC f
+  *   arrayLoad*  ->  xALOAD
+  *
+  * As barreiras de escrita são mantidas: o ChangeFieldAccessMethodVisitor não deixa no código informação
+  * suficiente para reconstruir o PUTFIELD original, e fora de transacções elas continuam a ter trabalho
+  * a fazer com -orecs e -eagerinvalidation.
+  *
+  * Uma transacção não pode começar a meio do método (as transacções só são criadas no inicio de uma
+  * SpeculationTask), por isso o teste à entrada é suficiente. O contrário pode acontecer (commit forçado
+  * por um nonTransactionalActionAttempted), mas nesse caso as barreiras continuam a ser correctas.
+  **/
+public class BarrierFreeNonSpeculativeMethodVisitor extends MethodNode {
+
+	private static final Logger Log = LoggerFactory.getLogger(BarrierFreeNonSpeculativeMethodVisitor.class);
+
+	private static final String TRANSACTION = CommonTypes.TRANSACTION.asmName();
+	private static final String BARRIERSWITCH = CommonTypes.BARRIERSWITCH.asmName();
+
+	// Limite para a duplicação, para não ultrapassar o tamanho máximo de um método
+	private static final int MAX_INSTRUCTIONS = 4000;
+
+	private final ClassVisitor _cv;
+
+	public BarrierFreeNonSpeculativeMethodVisitor(int access, String name, String desc, String signature,
+		String[] exceptions, ClassVisitor cv) {
+		super(Opcodes.ASM4, access, name, desc, signature, exceptions);
+		_cv = cv;
+	}
+
+	@Override
+	public void visitEnd() {
+		if ((access & (ACC_ABSTRACT | ACC_NATIVE)) == 0 && instructions.size() <= MAX_INSTRUCTIONS) {
+			Map<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+			InsnList copy = copy(labels);
+			if (removeBarriers(copy)) {
+				addCopy(copy, labels);
+			} else {
+				Log.debug("Unexpected barrier sequence in " + name + desc + ", not creating barrier-free copy");
+			}
+		}
+		accept(_cv);
+	}
+
+	/** Cria uma cópia das instruções do método, sem frames (que são recalculadas mais à frente) **/
+	private InsnList copy(Map<LabelNode, LabelNode> labels) {
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn instanceof LabelNode) labels.put((LabelNode) insn, new LabelNode());
+		}
+		InsnList copy = new InsnList();
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (!(insn instanceof FrameNode)) copy.add(insn.clone(labels));
+		}
+		return copy;
+	}
+
+	/** Coloca a cópia antes do código original, seleccionada pelo teste à entrada do método **/
+	@SuppressWarnings("unchecked")
+	private void addCopy(InsnList copy, Map<LabelNode, LabelNode> labels) {
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; ) {
+			AbstractInsnNode next = insn.getNext();
+			if (insn instanceof FrameNode) instructions.remove(insn);
+			insn = next;
+		}
+
+		LabelNode transactional = new LabelNode();
+		InsnList prologue = new InsnList();
+		prologue.add(new MethodInsnNode(INVOKESTATIC, TRANSACTION, "isInTransaction", "()Z"));
+		prologue.add(new JumpInsnNode(IFNE, transactional));
+		prologue.add(copy);
+		prologue.add(transactional);
+		instructions.insert(prologue);
+
+		List<TryCatchBlockNode> blocks = new ArrayList<TryCatchBlockNode>();
+		for (TryCatchBlockNode tcb : (List<TryCatchBlockNode>) tryCatchBlocks) {
+			blocks.add(new TryCatchBlockNode(labels.get(tcb.start), labels.get(tcb.end),
+				labels.get(tcb.handler), tcb.type));
+		}
+		tryCatchBlocks.addAll(0, blocks);
+
+		if (localVariables != null) {
+			List<LocalVariableNode> variables = new ArrayList<LocalVariableNode>();
+			for (LocalVariableNode lv : (List<LocalVariableNode>) localVariables) {
+				variables.add(new LocalVariableNode(lv.name, lv.desc, lv.signature,
+					labels.get(lv.start), labels.get(lv.end), lv.index));
+			}
+			localVariables.addAll(variables);
+		}
+	}
+
+	/** Desfaz as barreiras de leitura em list. Retorna false se alguma não tiver a forma esperada. **/
+	private static boolean removeBarriers(InsnList list) {
+		for (AbstractInsnNode insn = list.getFirst(); insn != null; ) {
+			String barrier = readBarrier(insn);
+			AbstractInsnNode next = insn.getNext();
+			if (barrier == null) {
+				insn = next;
+				continue;
+			}
+			String barrierDesc = insn instanceof MethodInsnNode ?
+				((MethodInsnNode) insn).desc : ((InvokeDynamicInsnNode) insn).desc;
+
+			if (barrier.equals("markVersioned")) {
+				// DUP/GETSTATIC $staticFieldBase; GETSTATIC $offset_; markVersioned
+				AbstractInsnNode offset = insn.getPrevious();
+				if (!isOffset(offset)) return false;
+				AbstractInsnNode base = offset.getPrevious();
+				if (base == null || (base.getOpcode() != DUP && !isStaticFieldBase(base))) return false;
+				list.remove(base);
+				list.remove(offset);
+				list.remove(insn);
+			} else if (barrier.startsWith("arrayLoad")) {
+				list.set(insn, new InsnNode(arrayLoadOpcode(Type.getReturnType(barrierDesc))));
+			} else {
+				AbstractInsnNode offset = insn.getPrevious();
+				if (barrier.startsWith("loadImmutable")) {
+					if (offset == null || offset.getOpcode() != SIPUSH) return false;
+					list.remove(offset);
+					offset = insn.getPrevious();
+				}
+				if (!isOffset(offset)) return false;
+				AbstractInsnNode field = offset.getPrevious();
+				AbstractInsnNode base = (field != null) ? field.getPrevious() : null;
+				if (base == null) return false;
+				if (field.getOpcode() == GETFIELD) {
+					if (base.getOpcode() != DUP) return false;
+				} else if (field.getOpcode() == GETSTATIC) {
+					if (!isStaticFieldBase(base)) return false;
+				} else {
+					return false;
+				}
+				list.remove(base);
+				list.remove(offset);
+				list.remove(insn);
+				// O tipo do field já é o do CHECKCAST
+				if (next != null && next.getOpcode() == CHECKCAST &&
+					Type.getType(((FieldInsnNode) field).desc).getInternalName().equals(
+						((TypeInsnNode) next).desc)) {
+					AbstractInsnNode afterCast = next.getNext();
+					list.remove(next);
+					next = afterCast;
+				}
+			}
+			insn = next;
+		}
+		return true;
+	}
+
+	/** Retorna o nome da barreira de leitura (ou do markVersioned) invocada por insn, ou null **/
+	private static String readBarrier(AbstractInsnNode insn) {
+		String name;
+		if (insn.getOpcode() == INVOKESTATIC && ((MethodInsnNode) insn).owner.equals(TRANSACTION)) {
+			name = ((MethodInsnNode) insn).name;
+		} else if (insn.getOpcode() == INVOKEDYNAMIC &&
+			((InvokeDynamicInsnNode) insn).bsm.getOwner().equals(BARRIERSWITCH)) {
+			name = ((InvokeDynamicInsnNode) insn).name;
+		} else {
+			return null;
+		}
+		return (name.startsWith("load") || name.startsWith("arrayLoad") || name.equals("markVersioned")) ?
+			name : null;
+	}
+
+	private static boolean isOffset(AbstractInsnNode insn) {
+		return insn != null && insn.getOpcode() == GETSTATIC && ((FieldInsnNode) insn).name.startsWith("$offset_");
+	}
+
+	private static boolean isStaticFieldBase(AbstractInsnNode insn) {
+		return insn.getOpcode() == GETSTATIC && ((FieldInsnNode) insn).name.equals("$staticFieldBase");
+	}
+
+	private static int arrayLoadOpcode(Type type) {
+		switch (type.getSort()) {
+			case Type.BOOLEAN:
+			case Type.BYTE:   return BALOAD;
+			case Type.CHAR:   return CALOAD;
+			case Type.SHORT:  return SALOAD;
+			case Type.INT:    return IALOAD;
+			case Type.LONG:   return LALOAD;
+			case Type.FLOAT:  return FALOAD;
+			case Type.DOUBLE: return DALOAD;
+			default:          return AALOAD;
+		}
+	}
+
+}
@@ -42,9 +42,15 @@ public class CommonTypes {
 	public static final Type FUTURE =
 		Type.fromClass(java.util.concurrent.Future.class);
 
+	public static final Type PRIMITIVEFUTURE =
+		Type.fromClass(jaspex.speculation.nsruntime.PrimitiveFuture.class);
+
 	public static final Type CALLABLE =
 		Type.fromClass(jaspex.speculation.runtime.Callable.class);
 
+	public static final Type INDYSPAWNHELPER =
+		Type.fromClass(jaspex.speculation.runtime.IndySpawnHelper.class);
+
 	public static final Type PREDICTABLECALLABLE =
 		Type.fromClass(jaspex.speculation.nsruntime.PredictableCallable.class);
 
@@ -60,6 +66,9 @@ public class CommonTypes {
 	public static final Type STATICFIELDBASE =
 		Type.fromClass(jaspex.stm.StaticFieldBase.class);
 
+	public static final Type BARRIERSWITCH =
+		Type.fromClass(jaspex.stm.BarrierSwitch.class);
+
 	public static final Type DEBUGCLASS =
 		Type.fromClass(jaspex.Debug.class);
 
@@ -67,5 +76,6 @@ public class CommonTypes {
 		Type.fromClass(jaspex.speculation.Replacements.class);
 
 	public static final String MARKER_BEFOREINLINEDSTORE = "jaspex/MARKER/beforeInlinedStore";
+	public static final String MARKER_LOCALACCESS = "jaspex/MARKER/localAccess";
 
 }
@@ -60,6 +60,10 @@ public class CreateNonSpeculativeMethodsClassVisitor extends ClassVisitor {
 								signature, exceptions));
 		}
 
+		public CreateNonSpeculativeMethodVisitor(MethodVisitor mv) {
+			super(Opcodes.ASM4, mv);
+		}
+
 		@Override
 		public void visitMethodInsn(int opcode, String owner, String name, String desc) {
 			mv.visitMethodInsn(opcode, owner, convertName(name), convertDesc(desc));
@@ -68,10 +72,17 @@ public class CreateNonSpeculativeMethodsClassVisitor extends ClassVisitor {
 
 	// Excepção ao code style normal para simular o ClassAdapter
 	private final ClassVisitor cv;
+	// Acrescentar aos métodos uma cópia sem barreiras de leitura (-barrierfreenonspec)
+	private final boolean _barrierFree;
 
 	public CreateNonSpeculativeMethodsClassVisitor(ClassVisitor cv) {
+		this(cv, false);
+	}
+
+	public CreateNonSpeculativeMethodsClassVisitor(ClassVisitor cv, boolean barrierFree) {
 		super(Opcodes.ASM4);
 		this.cv = cv;
+		_barrierFree = barrierFree;
 	}
 
 	@Override
@@ -81,6 +92,11 @@ public class CreateNonSpeculativeMethodsClassVisitor extends ClassVisitor {
 			if (!desc.contains("/SpeculativeCtorMarker")) return null;
 		} else {
 			if (!name.endsWith("$speculative")) return null;
+			// Constructores não são duplicados, porque o teste teria de ser feito antes da chamada ao super()
+			if (_barrierFree) {
+				return new CreateNonSpeculativeMethodVisitor(new BarrierFreeNonSpeculativeMethodVisitor(
+					access, convertName(name), convertDesc(desc), signature, exceptions, cv));
+			}
 		}
 		return new CreateNonSpeculativeMethodVisitor(access, name, desc, signature, exceptions, cv);
 	}
@@ -131,18 +131,8 @@ public final class Replacements {
 		if (sP < 0 || dP < 0 || l < 0) throw new IndexOutOfBoundsException();
 		if (l == 0) return;
 
-		if (s == d && sP < dP && sP + l >= dP) {
-			/* If the src and dest arguments refer to the same array object, then the copying
-			 * is performed as if the components at positions srcPos through srcPos+length-1 were
-			 * first copied to a temporary array with length components and then the contents of
-			 * the temporary array were copied into positions destPos through destPos+length-1 of
-			 * the destination array.
-			 */
-			// Quando sP >= dP não existe problema, já que nunca sobrepomos elementos que vamos precisar
-			// Quando sP < dP e sP + l < dP, também não vamos escrever em cima de elementos repetidos
-			// Apenas no caso restante é que precisamos de fazer uma cópia de parte/todo o array antes
-			throw new Error("FIXME: Not implemented yet");
-		}
+		// Fora de transacções, ou quando possível, a cópia é feita em bloco pela STM
+		if (Transaction.arraycopy(s, sP, d, dP, l)) return;
 
 		       if (s instanceof boolean[] && d instanceof boolean[]) { arraycopy((boolean[]) s, sP, (boolean[]) d, dP, l);
 		} else if (s instanceof    byte[] && d instanceof    byte[]) { arraycopy(   (byte[]) s, sP,    (byte[]) d, dP, l);
@@ -159,6 +149,13 @@ public final class Replacements {
 	private static void arraycopy(boolean[] src, int srcPos, boolean[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreBoolean(dest, destPos + i, Transaction.arrayLoadBoolean(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreBoolean(dest, destPos + i, Transaction.arrayLoadBoolean(src, srcPos + i));
 		}
@@ -167,6 +164,13 @@ public final class Replacements {
 	private static void arraycopy(byte[] src, int srcPos, byte[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreByte(dest, destPos + i, Transaction.arrayLoadByte(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreByte(dest, destPos + i, Transaction.arrayLoadByte(src, srcPos + i));
 		}
@@ -175,6 +179,13 @@ public final class Replacements {
 	private static void arraycopy(char[] src, int srcPos, char[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreChar(dest, destPos + i, Transaction.arrayLoadChar(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreChar(dest, destPos + i, Transaction.arrayLoadChar(src, srcPos + i));
 		}
@@ -183,6 +194,13 @@ public final class Replacements {
 	private static void arraycopy(short[] src, int srcPos, short[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreShort(dest, destPos + i, Transaction.arrayLoadShort(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreShort(dest, destPos + i, Transaction.arrayLoadShort(src, srcPos + i));
 		}
@@ -191,6 +209,13 @@ public final class Replacements {
 	private static void arraycopy(int[] src, int srcPos, int[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreInt(dest, destPos + i, Transaction.arrayLoadInt(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreInt(dest, destPos + i, Transaction.arrayLoadInt(src, srcPos + i));
 		}
@@ -199,6 +224,13 @@ public final class Replacements {
 	private static void arraycopy(long[] src, int srcPos, long[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreLong(dest, destPos + i, Transaction.arrayLoadLong(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreLong(dest, destPos + i, Transaction.arrayLoadLong(src, srcPos + i));
 		}
@@ -207,6 +239,13 @@ public final class Replacements {
 	private static void arraycopy(float[] src, int srcPos, float[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreFloat(dest, destPos + i, Transaction.arrayLoadFloat(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreFloat(dest, destPos + i, Transaction.arrayLoadFloat(src, srcPos + i));
 		}
@@ -215,6 +254,13 @@ public final class Replacements {
 	private static void arraycopy(double[] src, int srcPos, double[] dest, int destPos, int length) {
 		if (srcPos+length > src.length || destPos+length > dest.length) throw new IndexOutOfBoundsException();
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				Transaction.arrayStoreDouble(dest, destPos + i, Transaction.arrayLoadDouble(src, srcPos + i));
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			Transaction.arrayStoreDouble(dest, destPos + i, Transaction.arrayLoadDouble(src, srcPos + i));
 		}
@@ -230,10 +276,30 @@ public final class Replacements {
 		// ArrayStoreException como especificado na documentação do System.arraycopy.
 		Object[] typecheckArray = (Object[]) Array.newInstance(dest.getClass().getComponentType(), 1);
 
+		if (copyBackwards(src, srcPos, dest, destPos)) {
+			for (int i = length - 1; i >= 0; i--) {
+				typecheckArray[0] = Transaction.arrayLoadObject(src, srcPos + i);
+				Transaction.arrayStoreObject(dest, destPos + i, typecheckArray[0]);
+			}
+			return;
+		}
+
 		for (int i = 0; i < length; i++) {
 			typecheckArray[0] = Transaction.arrayLoadObject(src, srcPos + i);
 			Transaction.arrayStoreObject(dest, destPos + i, typecheckArray[0]);
 		}
 	}
 
+	/** If the src and dest arguments refer to the same array object, then the copying is performed as if
+	  * the components at positions srcPos through srcPos+length-1 were first copied to a temporary array
+	  * with length components and then the contents of the temporary array were copied into positions
+	  * destPos through destPos+length-1 of the destination array.
+	  *
+	  * Quando sP >= dP não existe problema, já que nunca escrevemos em cima de elementos que ainda vamos
+	  * precisar; no caso contrário, basta fazer a cópia do fim para o início.
+	  **/
+	private static boolean copyBackwards(Object src, int srcPos, Object dest, int destPos) {
+		return (src == dest) && (srcPos < destPos);
+	}
+
 }
@@ -25,6 +25,7 @@ import jaspex.Options;
 import jaspex.speculation.nsruntime.ContSpeculationControl;
 import jaspex.speculation.runtime.*;
 import jaspex.stm.ExternalAccessHelper;
+import jaspex.transactifier.EffectivelyFinalFields;
 import jaspex.transactifier.Transactifier;
 import jaspex.util.Unsafe;
 
@@ -34,6 +35,7 @@ import java.lang.reflect.*;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -155,7 +157,14 @@ public class SpeculativeClassLoader extends ClassLoader {
 
 		if (jaspex.Options.CLASSCACHE) {
 			classBytes = Cache.lookupClass(className);
-			if (classBytes != null) return classBytes;
+			if (classBytes != null) {
+				// Classes lidas da cache não passam pelo Transactifier, que é quem normalmente
+				// analisa as classes carregadas para o -effectivelyfinal
+				if (jaspex.Options.EFFECTIVELYFINAL) {
+					EffectivelyFinalFields.classLoaded(new ClassReader(className.commonName()));
+				}
+				return classBytes;
+			}
 		}
 
 		if (CodegenHelper.isCodegenClass(className)) {
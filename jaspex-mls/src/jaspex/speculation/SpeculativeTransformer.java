@@ -148,6 +148,16 @@ public class SpeculativeTransformer {
 			}
 		};
 
+		// Com -indyspawn, o InsertContinuationSpeculationMethodVisitor usa invokedynamic, que só pode ser
+		// usado a partir de Java 7
+		if (Options.INDYSPAWN) cv = new ClassVisitor(Opcodes.ASM4, cv) {
+			@Override public void visit(int version, int access, String name, String signature,
+			String superName, String[] interfaces) {
+				if ((version & 0xFFFF) < Opcodes.V1_7) version = Opcodes.V1_7;
+				cv.visit(version, access, name, signature, superName, interfaces);
+			}
+		};
+
 		// Visitor que adiciona fields e métodos para o -detectlocal
 		cv = new InjectDetectLocalClassVisitor(cv);
 
@@ -171,7 +181,10 @@ public class SpeculativeTransformer {
 
 		// Criar versões non-speculative dos métodos, que funcionam transaccionalmente, mas não
 		// fazem spawn de especulações
-		new ClassReader(cw.toByteArray()).accept(new CreateNonSpeculativeMethodsClassVisitor(cw), 0);
+		// Com -barrierfreenonspec, estes métodos têm também uma cópia sem barreiras de leitura, usada fora
+		// de transacções (as frames são recalculadas pelo insertSpeculationCode)
+		new ClassReader(cw.toByteArray()).accept(new CreateNonSpeculativeMethodsClassVisitor(cw,
+			Options.BARRIERFREENONSPEC && !_JDKClass), 0);
 
 		return cw.toByteArray();
 	}
@@ -261,6 +274,11 @@ public class SpeculativeTransformer {
 		ClassWriter cw = new jaspex.util.ClassWriter(ClassWriter.COMPUTE_FRAMES);
 		cv = cw;
 
+		// Com -tieredspawn, métodos com spawn sites passam a testar à entrada se devem delegar na sua
+		// versão $non_speculative
+		if (Options.TIEREDSPAWN && !_JDKClass) {
+			cv = new GenericMethodVisitorAdapter(cv, TieredSpawnGuardMethodVisitor.class, currentClass);
+		}
 		// Retirar informação extra que é passada dentro do tipo dos futures
 		cv = new GenericMethodVisitorAdapter(cv, CleanupFutureTypeInfoMethodVisitor.class);
 		// Remover marcadores de inlining da transactificação
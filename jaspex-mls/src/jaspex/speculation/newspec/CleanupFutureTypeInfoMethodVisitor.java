@@ -45,7 +45,13 @@ public class CleanupFutureTypeInfoMethodVisitor extends MethodVisitor {
 			name.equals("spawnSpeculation")) {
 			desc = desc.substring(0, desc.indexOf(')') + 1) + FUTURE.bytecodeName();
 		} else if (opcode == INVOKEINTERFACE && owner.startsWith(FUTURE.asmName())) {
-			owner = FUTURE.asmName();
+			if (name.equals("getPrimitive")) {
+				// Inserido pelo DelayGetFutureMethodVisitor com -primitivefutures
+				owner = CommonTypes.PRIMITIVEFUTURE.asmName();
+				mv.visitTypeInsn(CHECKCAST, owner);
+			} else {
+				owner = FUTURE.asmName();
+			}
 		}
 		mv.visitMethodInsn(opcode, owner, name, desc);
 	}
@@ -20,8 +20,10 @@
 
 package jaspex.speculation.newspec;
 
+import jaspex.Options;
 import jaspex.speculation.CommonTypes;
 import jaspex.speculation.InvokedMethod;
+import jaspex.speculation.runtime.CodegenHelper;
 
 import java.util.Arrays;
 import java.util.List;
@@ -400,6 +402,24 @@ public class DelayGetFutureMethodVisitor extends MethodVisitor {
 		mv.visitMethodInsn(opcode, owner, name, desc);
 	}
 
+	@Override
+	public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+		if (!_active || currentStack() == null) {
+			mv.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+			return;
+		}
+
+		// Call sites do -indybarriers e -indyspawn: concretizar os argumentos, tal como para um INVOKESTATIC
+		int stackSlots = 0;
+		for (Type t : new InvokedMethod(INVOKESTATIC, Type.OBJECT, name, desc).argumentTypes()) {
+			stackSlots += t.getNumberSlots();
+		}
+
+		complexFullfillFuturesStack(stackSlots);
+
+		mv.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+	}
+
 	@Override
 	public void visitJumpInsn(int opcode, Label label) {
 		if (!_active) { mv.visitJumpInsn(opcode, label); return; }
@@ -425,12 +445,7 @@ public class DelayGetFutureMethodVisitor extends MethodVisitor {
 			// Isto é um tipo nativo de certeza, pode é não ser um int (pode ser qualquer coisa
 			// que nos locals se possa guardar como um int: boolean, char, byte ou short)
 			Type returnType = extractReturnType(slotType);
-			mv.visitMethodInsn(INVOKEINTERFACE, slotType /* Future, mas é preciso manter o extra info */,
-				"get", "()" + Type.OBJECT.bytecodeName());
-			mv.visitTypeInsn(CHECKCAST, returnType.toObject().asmName());
-			mv.visitMethodInsn(INVOKEVIRTUAL,
-				returnType.toObject().asmName(), returnType.primitiveTypeName() + "Value",
-				"()" + returnType.bytecodeName());
+			getFuture(slotType, returnType);
 
 			mv.visitInsn(IADD);
 			mv.visitVarInsn(ISTORE, var);
@@ -573,18 +588,7 @@ public class DelayGetFutureMethodVisitor extends MethodVisitor {
 				}
 
 				// Concretizar future
-				mv.visitMethodInsn(INVOKEINTERFACE, (String) slot /* Future, mas é preciso manter o extra info */,
-					"get", "()" + Type.OBJECT.bytecodeName());
-
-				if (returnType.isPrimitive()) {
-					mv.visitTypeInsn(CHECKCAST, returnType.toObject().asmName());
-					mv.visitMethodInsn(INVOKEVIRTUAL,
-						returnType.toObject().asmName(),
-						returnType.primitiveTypeName() + "Value",
-						"()" + returnType.bytecodeName());
-				} else {
-					mv.visitTypeInsn(CHECKCAST, returnType.asmName());
-				}
+				getFuture((String) slot, returnType);
 
 				// Repor stack como deve ser
 				switch (pos) {
@@ -654,6 +658,30 @@ public class DelayGetFutureMethodVisitor extends MethodVisitor {
 		}
 	}
 
+	/** Emite código para concretizar o futuro no topo da stack.
+	  * Com -primitivefutures, resultados primitivos são obtidos com o getPrimitive(), sem unboxing;
+	  * o CleanupFutureTypeInfoMethodVisitor depois troca o tipo do futuro pelo PrimitiveFuture.
+	  **/
+	private void getFuture(String futureType /* Future, mas é preciso manter o extra info */, Type returnType) {
+		if (Options.PRIMITIVEFUTURES && returnType.isPrimitive()) {
+			mv.visitMethodInsn(INVOKEINTERFACE, futureType, "getPrimitive", "()J");
+			CodegenHelper.primitiveUnwrap(returnType, mv);
+			return;
+		}
+
+		mv.visitMethodInsn(INVOKEINTERFACE, futureType, "get", "()" + Type.OBJECT.bytecodeName());
+
+		if (returnType.isPrimitive()) {
+			mv.visitTypeInsn(CHECKCAST, returnType.toObject().asmName());
+			mv.visitMethodInsn(INVOKEVIRTUAL,
+				returnType.toObject().asmName(),
+				returnType.primitiveTypeName() + "Value",
+				"()" + returnType.bytecodeName());
+		} else {
+			mv.visitTypeInsn(CHECKCAST, returnType.asmName());
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private static String stackToString(List<Object> stack) {
 		if (stack == null) return "null";
@@ -40,6 +40,11 @@ public class InsertContinuationSpeculationMethodVisitor extends MethodVisitor {
 
 	private static final Logger Log = LoggerFactory.getLogger(InsertContinuationSpeculationMethodVisitor.class);
 
+	private static final Handle INDYSPAWN_BOOTSTRAP = new Handle(H_INVOKESTATIC,
+		CommonTypes.INDYSPAWNHELPER.asmName(), "bootstrap",
+		"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;" +
+		"Ljava/lang/invoke/MethodHandle;Ljava/lang/String;ILjava/lang/String;)Ljava/lang/invoke/CallSite;");
+
 	private final boolean _active;
 
 	private int _spawnId; // É atribuido a cada spawn feito um id local, que é usado para
@@ -113,6 +118,20 @@ public class InsertContinuationSpeculationMethodVisitor extends MethodVisitor {
 		//Log.debug("visitMethodInsn: " + _currentMethod.fullJavaName() + " || " + m.name());
 
 		// Transformar invocações em criações de Callable + chamada a spawnSpeculation
+		if (jaspex.Options.INDYSPAWN) {
+			// Callable é criado por um call site invokedynamic (ver IndySpawnHelper), com o mesmo
+			// tipo que o newInstance da classe Codegen
+			String ctorTypes = m.isStatic() ? "" : m.owner().bytecodeName();
+			for (Type type : m.argumentTypes()) ctorTypes += type.bytecodeName();
+			mv.visitInvokeDynamicInsn(FixPrivateMethodAccessMethodVisitor.stripPrivate(name),
+				"(" + ctorTypes + ")" + CommonTypes.CALLABLE.bytecodeName(), INDYSPAWN_BOOTSTRAP,
+				new Handle(opcode == INVOKESTATIC ? H_INVOKESTATIC :
+						opcode == INVOKEINTERFACE ? H_INVOKEINTERFACE : H_INVOKEVIRTUAL,
+					owner, name, desc),
+				CodegenHelper.indyCodegenName(m),
+				jaspex.Options.ALLOWDUMMYTX && SpeculationSkiplist.useDummyTransaction(m) ? 1 : 0,
+				_currentMethod.name() + _currentMethod.desc());
+		} else {
 		Type codegenClassType = CodegenHelper.methodToCodegenType(m);
 
 		if (m.isStatic() && m.argumentTypes().isEmpty()) {
@@ -127,6 +146,7 @@ public class InsertContinuationSpeculationMethodVisitor extends MethodVisitor {
 			mv.visitMethodInsn(INVOKESTATIC, codegenClassType.asmName(), "newInstance",
 				"(" + ctorTypes + ")" + codegenClassType.bytecodeName());
 		}
+		}
 
 		if (!_firstPass && Log.isDebugEnabled()) { // Imprimir esta info apenas no 2º pass
 			if (_insertedSpeculations == null) {
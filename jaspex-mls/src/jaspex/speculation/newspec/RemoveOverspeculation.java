@@ -183,7 +183,8 @@ public class RemoveOverspeculation {
 				if (mInsn.owner.equals(CommonTypes.CONTSPECULATIONCONTROL.asmName()) &&
 					mInsn.name.equals("spawnSpeculation")) {
 					// do nothing
-				} else if (mInsn.owner.startsWith(CommonTypes.FUTURE.asmName()) && mInsn.name.equals("get")) {
+				} else if (mInsn.owner.startsWith(CommonTypes.FUTURE.asmName()) &&
+						(mInsn.name.equals("get") || mInsn.name.equals("getPrimitive"))) {
 					int futureId = Integer.parseInt(mInsn.owner.substring(mInsn.owner.lastIndexOf('$')+1));
 
 					if (getFutureId(tracking) == futureId) {
@@ -43,12 +43,14 @@ public class SpeculationSkiplist {
 	private static final String TAG_USEDUMMY = "usedummy: ";
 	private static final String TAG_ALLOW = "allow: ";
 	private static final String TAG_SKIPFIELDTX = "skipfieldtx: ";
+	private static final String TAG_MULTIVERSION = "multiversion: ";
 
 	// Tal como no ClassFilter, esta lista suporta packages, classes, métodos parciais, etc.
 	private static final List<String> speculationSkiplist = new ArrayList<String>();
 	private static final List<String> useDummyTransactionList = new ArrayList<String>();
 	private static final List<String> allowList = new ArrayList<String>(); // Whitelist
 	private static final List<String> skipFieldTxList = new ArrayList<String>();
+	private static final List<String> multiVersionList = new ArrayList<String>(); // Usado pelo -multiversion
 
 	static {
 		Exception error = null;
@@ -78,6 +80,8 @@ public class SpeculationSkiplist {
 						allowList.add(line.substring(TAG_ALLOW.length()));
 					} else if (lineLower.startsWith(TAG_SKIPFIELDTX)) {
 						skipFieldTxList.add(line.substring(TAG_SKIPFIELDTX.length()));
+					} else if (lineLower.startsWith(TAG_MULTIVERSION)) {
+						multiVersionList.add(line.substring(TAG_MULTIVERSION.length()));
 					} else {
 						speculationSkiplist.add(line);
 					}
@@ -108,4 +112,8 @@ public class SpeculationSkiplist {
 		return ClassFilter.listContainsMethod(skipFieldTxList, ownerClass, fieldName, " " + fieldType.bytecodeName());
 	}
 
+	public static boolean multiVersionField(asmlib.Type ownerClass, String fieldName, asmlib.Type fieldType) {
+		return ClassFilter.listContainsMethod(multiVersionList, ownerClass, fieldName, " " + fieldType.bytecodeName());
+	}
+
 }
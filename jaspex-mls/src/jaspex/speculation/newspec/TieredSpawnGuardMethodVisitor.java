@@ -0,0 +1,104 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.speculation.newspec;
+
+import jaspex.speculation.CommonTypes;
+import jaspex.speculation.CreateNonSpeculativeMethodsClassVisitor;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+import static org.objectweb.asm.Opcodes.*;
+
+import asmlib.InfoClass;
+
+/** MethodVisitor usado pelo -tieredspawn para acrescentar aos métodos $speculative que contêm spawn sites
+  * (call sites invokedynamic criados pelo InsertContinuationSpeculationMethodVisitor com -indyspawn) um teste
+  * à entrada que, quando todos os spawn sites do método foram abandonados pelo SpawnSiteController, delega
+  * a execução na versão $non_speculative do método:
+  *
+  *   INVOKEDYNAMIC tierDown()Z; IFEQ L; load this + argumentos; INVOKESPECIAL/INVOKESTATIC m$non_speculative; xRETURN; L:
+  *
+  * A versão $non_speculative é o método com todos os spawn sites emitidos como chamadas normais, portanto esta
+  * é a forma de trocar o código do método por uma versão recompilada sem re-definir a classe. O call site
+  * do teste é mutável (ver IndySpawnHelper.bootstrapTierGuard), e enquanto não é religado o JIT reduz o teste
+  * a uma constante.
+  *
+  * É usado o INVOKESPECIAL para métodos de instância para que a versão invocada seja sempre a desta classe,
+  * mesmo que o método seja redefinido numa subclasse (por exemplo, quando é chamado através de um super.m()).
+  **/
+public class TieredSpawnGuardMethodVisitor extends MethodNode {
+
+	private static final Handle GUARD_BOOTSTRAP = new Handle(H_INVOKESTATIC,
+		CommonTypes.INDYSPAWNHELPER.asmName(), "bootstrapTierGuard",
+		"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;" +
+		"Ljava/lang/String;)Ljava/lang/invoke/CallSite;");
+
+	private final ClassVisitor _cv;
+	private final String _owner;
+
+	public TieredSpawnGuardMethodVisitor(int access, String name, String desc, String signature,
+		String[] exceptions, ClassVisitor cv, InfoClass currentClass) {
+		super(Opcodes.ASM4, access, name, desc, signature, exceptions);
+		_cv = cv;
+		_owner = currentClass.type().asmName();
+	}
+
+	@Override
+	public void visitEnd() {
+		if (name.endsWith("$speculative") && (access & (ACC_ABSTRACT | ACC_NATIVE)) == 0 && hasSpawnSites()) {
+			addGuard();
+		}
+		accept(_cv);
+	}
+
+	private boolean hasSpawnSites() {
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			if (insn.getOpcode() == INVOKEDYNAMIC && ((InvokeDynamicInsnNode) insn).bsm.getOwner().equals(
+				CommonTypes.INDYSPAWNHELPER.asmName())) return true;
+		}
+		return false;
+	}
+
+	private void addGuard() {
+		boolean isStatic = (access & ACC_STATIC) != 0;
+		LabelNode speculative = new LabelNode();
+		InsnList guard = new InsnList();
+
+		guard.add(new InvokeDynamicInsnNode("tierDown", "()Z", GUARD_BOOTSTRAP, name + desc));
+		guard.add(new JumpInsnNode(IFEQ, speculative));
+
+		int pos = 0;
+		if (!isStatic) guard.add(new VarInsnNode(ALOAD, pos++));
+		for (Type type : Type.getArgumentTypes(desc)) {
+			guard.add(new VarInsnNode(type.getOpcode(ILOAD), pos));
+			pos += type.getSize();
+		}
+		guard.add(new MethodInsnNode(isStatic ? INVOKESTATIC : INVOKESPECIAL, _owner,
+			CreateNonSpeculativeMethodsClassVisitor.convertName(name), desc));
+		guard.add(new InsnNode(Type.getReturnType(desc).getOpcode(IRETURN)));
+		guard.add(speculative);
+
+		// As frames são recalculadas pelo ClassWriter
+		instructions.insert(guard);
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.speculation.nsruntime;
+
+import jaspex.speculation.nsruntime.Executor.SpeculationTaskWorkerThread;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import contlib.Continuation;
+
+/** Thread usada pelo -asynccommit para fazer o commit das tasks frozen no modo simples.
+  *
+  * Uma task que terminou todo o seu trabalho antes do parent faz freeze com uma FinishedFrozenTask, e
+  * normalmente é a thread do parent que, no setResult, valida e faz commit da transacção da task, e passa o
+  * resultado à task seguinte (que por sua vez pode também já ter terminado, e assim sucessivamente). Com o
+  * -asynccommit, o setResult coloca a FinishedFrozenTask nesta queue e a thread do parent volta logo à pool.
+  *
+  * Como uma task só é colocada na queue depois do setResult do seu parent, que por sua vez só acontece depois
+  * do commit do parent, os commits são feitos em program order.
+  *
+  * Nem sempre esta thread se limita a validar e fazer commit: se a validação falhar, a task é re-executada
+  * aqui, e o setResult feito no fim do thaw pode fazer thaw inline de uma ContinuationFrozenTask filha. Nesses
+  * casos esta thread passa a ser a thread que executa o código em program order, fora da contabilidade da
+  * pool, e os commits das tasks seguintes (que estão na queue) ficam à espera dessa execução. Como esta thread
+  * não é um worker da WorkStealingPool (não tem _worker), um spawnSpeculation feito aqui não pode ser
+  * executado por ela, e por isso a opção é incompatível com o -workstealing.
+  **/
+final class Committer implements Runnable {
+
+	private static final LinkedBlockingQueue<FrozenTask> _queue = new LinkedBlockingQueue<FrozenTask>();
+	private static final SpeculationTaskWorkerThread _thread = new SpeculationTaskWorkerThread(new Committer());
+
+	static {
+		_thread.setName("Committer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	private Committer() { }
+
+	static void enqueue(FrozenTask frozenTask) {
+		_queue.add(frozenTask);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			final FrozenTask frozenTask;
+			try {
+				frozenTask = _queue.take();
+			} catch (InterruptedException e) { throw new Error(e); }
+
+			// Tal como no SpeculationTask.run(), o thaw pode limpar a stack e continuar com outro Runnable
+			Continuation.runWithContinuationSupport(new Runnable() {
+				public void run() {
+					frozenTask.thaw();
+				}
+			});
+			Runnable nextRunnable = _thread.getAndCleanRunnable();
+			while (nextRunnable != null) {
+				Continuation.runWithContinuationSupport(nextRunnable);
+				nextRunnable = _thread.getAndCleanRunnable();
+			}
+
+			_thread.setCurrentSpeculationTask(null);
+		}
+	}
+
+}
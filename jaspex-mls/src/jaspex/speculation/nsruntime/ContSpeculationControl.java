@@ -24,6 +24,7 @@ import jaspex.Options;
 import jaspex.speculation.nsruntime.Executor.SpeculationTaskWorkerThread;
 import jaspex.speculation.runtime.SpeculationException;
 import jaspex.speculation.runtime.Callable;
+import jaspex.speculation.runtime.IndySpawnHelper;
 import jaspex.stm.Transaction;
 
 import java.util.concurrent.Future;
@@ -41,6 +42,7 @@ public final class ContSpeculationControl {
 	// Stats throttling submissões à threadpool
 	private static long _earlyRejected = 0;
 	private static long _lateRejected = 0;
+	private static long _adaptiveRejected = 0;
 
 	protected static final int STACK_MAXIMUM = 50;
 
@@ -50,13 +52,23 @@ public final class ContSpeculationControl {
 
 		if (Options.COUNTTASKS) TaskCountProfiler.addTask(continueExecution);
 		if (Options.PROFILE) SpeculationTask.profilingYield(false);
+		if (Options.INCREMENTALVALIDATION) Transaction.validateIncremental();
+
+		// Spawn sites que não têm compensado ficam temporariamente desactivados (ver SpawnSiteController)
+		if (Options.ADAPTIVESPAWN && !SpawnSiteController.shouldSpeculate(continueExecution.spawnSiteId())) {
+			_adaptiveRejected++;
+			return callNow(continueExecution);
+		}
+
+		// Tasks demasiado especulativas cedem a thread a tasks buffered que as precedem em program order
+		if (Options.PREEMPTION && Executor.shouldPreempt(SpeculationTask.current())) SpeculationTask.preempt();
 
 		// Antes de começar a usar a maquinaria pesada, vamos tentar fazer uma verificação
 		// rápida para tentar determinar se existem worker threads livres
 		if (Options.NOSPECULATION || !Executor.hasFreeThreads()) {
 			// Nem sequer tentar fazer especulação
 			_earlyRejected++;
-			return new NoSpeculationFuture(continueExecution.call());
+			return callNow(continueExecution);
 		}
 
 		// Decidimos tentar fazer especulação
@@ -84,7 +96,7 @@ public final class ContSpeculationControl {
 				// correcto, sem transacções ou delays
 				continuation = null;
 				specTask = null;
-				return new NoSpeculationFuture(continueExecution.call());
+				return callNow(continueExecution);
 			}
 
 			// Especulação foi aceite
@@ -98,7 +110,9 @@ public final class ContSpeculationControl {
 				public void run() {
 					ExecutionResult result = null;
 					try {
-						result = ExecutionResult.newObjectResult(continueExecution.call());
+						result = (Options.PRIMITIVEFUTURES && continueExecution.primitiveResult()) ?
+							ExecutionResult.newPrimitiveResult(continueExecution.call_primitive()) :
+							ExecutionResult.newObjectResult(continueExecution.call());
 					} catch (SpeculationException e) { terminate(e, false); }
 					  catch (VirtualMachineError e)  { terminate(e, false); }
 					  catch (AssertionError e)       { terminate(e, false); }
@@ -119,6 +133,14 @@ public final class ContSpeculationControl {
 		}
 	}
 
+	/** Executa imediatamente o método, quando a especulação não é aceite **/
+	private static Future<?> callNow(Callable continueExecution) {
+		if (Options.PRIMITIVEFUTURES && continueExecution.primitiveResult()) {
+			return NoSpeculationFuture.newPrimitiveFuture(continueExecution.call_primitive());
+		}
+		return new NoSpeculationFuture(continueExecution.call());
+	}
+
 	/*public static int exactDepth(Continuation c) {
 		Object[] stack = (Object[]) c.getStack()[0];
 		int i = 0;
@@ -205,9 +227,17 @@ public final class ContSpeculationControl {
 			SpeculationTask._abortedSpeculations + SpeculationTask._failedSpeculations) + " speculations (" +
 			SpeculationTask._committedSpeculations + " committed, " +
 			SpeculationTask._abortedSpeculations + " aborted / " +
-			SpeculationTask._failedSpeculations + " failed validation, " +
+			SpeculationTask._failedSpeculations + " failed validation" +
+			(Options.INCREMENTALVALIDATION || Options.EAGERINVALIDATION ?
+				" (" + SpeculationTask._earlyFailedSpeculations + " detected early)" : "") +
+			(Options.CHECKPOINTS ?
+				" (" + SpeculationTask._checkpointResumes + " resumed from a checkpoint)" : "") +
+			(Options.PREEMPTION ? " (" + SpeculationTask._preemptedSpeculations + " preempted)" : "") + ", " +
 			_earlyRejected + " early rejected, " + _lateRejected +
-			" late rejected, " + Executor.getCompletedTaskCount() +
+			" late rejected, " +
+			(Options.ADAPTIVESPAWN ? _adaptiveRejected + " rejected by -adaptivespawn, " : "") +
+			(Options.TIEREDSPAWN ? IndySpawnHelper.tieredDownMethods() + " methods tiered down, " : "") +
+			Executor.getCompletedTaskCount() +
 			" tasks completed by thread pool)" +
 			(Options.RVP ? (", RVP enabled (" +
 					SpeculationTask._correctPredictions + " correct, " +
@@ -305,6 +335,15 @@ public final class ContSpeculationControl {
 		throw new AssertionError("Should never happen");
 	}
 
+	/** Captura de continuação que pode falhar (por exemplo dentro de um <clinit>); nesse caso devolve null **/
+	static Continuation tryCaptureContinuation() {
+		try {
+			return Continuation.capture();
+		} catch (IllegalThreadStateException e) {
+			return null;
+		}
+	}
+
 	/** Resume "seguro" de continuação -- quando falha, saimos logo **/
 	static void resumeContinuation(Continuation c) {
 		try {
@@ -31,10 +31,17 @@ public final class ExecutionResult {
 
 	final Object _object;
 	final Throwable _throwable;
+	// Resultado codificado num long, usado com -primitivefutures (ver PrimitiveFuture)
+	final long _primitive;
 
 	private ExecutionResult(Object resultObject, Throwable resultThrowable) {
+		this(resultObject, resultThrowable, 0);
+	}
+
+	private ExecutionResult(Object resultObject, Throwable resultThrowable, long resultPrimitive) {
 		_object = resultObject;
 		_throwable = resultThrowable;
+		_primitive = resultPrimitive;
 	}
 
 	static ExecutionResult newObjectResult(Object result) {
@@ -42,6 +49,12 @@ public final class ExecutionResult {
 		return new ExecutionResult(result, null);
 	}
 
+	static ExecutionResult newPrimitiveResult(long result) {
+		// Resultados 0 (incluindo false e void) partilham o NULL_RESULT
+		if (result == 0) return NULL_RESULT;
+		return new ExecutionResult(null, null, result);
+	}
+
 	static ExecutionResult newThrowableResult(Throwable throwable) {
 		return new ExecutionResult(null, throwable);
 	}
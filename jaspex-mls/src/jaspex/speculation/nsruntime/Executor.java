@@ -25,6 +25,7 @@ import jaspex.Options;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,8 @@ public final class Executor {
 
 	/** Tamanho de buffer para tasks **/
 	public static final int BUFFER_SIZE = 64;
+	/** Distância mínima ao head (em tasks) a partir da qual uma task pode ser preempted (-preemption) **/
+	private static final int PREEMPT_DISTANCE = 2;
 	// Offset de campo "count" da ArrayBlockingQueue, para acessos usando Unsafe
 	private static final long COUNT_FIELD_OFFSET =
 		jaspex.stm.Transaction.getFieldOffset(ArrayBlockingQueue.class, "count");
@@ -87,12 +90,26 @@ public final class Executor {
 		public jaspex.stm.Transaction currentTransaction() { return _currentTransaction; }
 		public void setCurrentTransaction(jaspex.stm.Transaction transaction) { _currentTransaction = transaction; }
 
+		// ReadLog e WriteSet reutilizados pelas transacções criadas nesta thread. Enquanto uma transacção
+		// está activa, é dona dos seus logs, e só os devolve (possivelmente a outra thread, no caso de ter
+		// sido frozen) quando termina.
+		private jaspex.stm.ReadLog _readLog;
+		public jaspex.stm.ReadLog getAndCleanReadLog() { jaspex.stm.ReadLog l = _readLog; _readLog = null; return l; }
+		public void setReadLog(jaspex.stm.ReadLog readLog) { _readLog = readLog; }
+
+		private jaspex.stm.WriteSet _writeSet;
+		public jaspex.stm.WriteSet getAndCleanWriteSet() { jaspex.stm.WriteSet ws = _writeSet; _writeSet = null; return ws; }
+		public void setWriteSet(jaspex.stm.WriteSet writeSet) { _writeSet = writeSet; }
+
 		private Runnable _nextRunnable;
 		public Runnable getAndCleanRunnable() { Runnable r = _nextRunnable; _nextRunnable = null; return r; }
 		public void setNextRunnable(Runnable runnable) { _nextRunnable = runnable; }
 
 		private final int _threadId;
 		public int threadId() { return _threadId; }
+
+		// Worker a que a thread pertence, quando é usado o -workstealing
+		WorkStealingPool.Worker _worker;
 	}
 
 	/** ThreadPoolExecutor parametrizado e modificado para colaborar com a SpeculationTaskWorkerThread
@@ -184,20 +201,266 @@ public final class Executor {
 
 	}
 
+	/** Scheduler usado com -workstealing, em substituição do ThreadPoolExecutor.
+	  *
+	  * Cada worker tem a sua queue de tasks, onde são colocadas as tasks submetidas pela task que está a
+	  * executar; um worker sem tasks, ou cuja queue tem apenas tasks mais especulativas do que as de outro
+	  * worker, rouba tasks desse worker. As queues estão ordenadas pela posição de cada task em program
+	  * order, e é sempre escolhida a task menos especulativa que está buffered.
+	  *
+	  * A posição em program order de uma nova task fica entre a da task que fez o spawn e a da sua childTask
+	  * actual (que vai passar a ser a grandchild): ver programOrder(). As posições são sequências de longs
+	  * não negativos, comparadas lexicograficamente (um prefixo vem antes das sequências que o estendem), e
+	  * por isso existe sempre uma posição livre entre duas outras: quando os valores de uma componente se
+	  * esgotam, a nova posição ganha mais uma componente. Cada componente dá para cerca de 32 níveis de
+	  * spawns encaixados entre as mesmas tasks, ou para 2^31 tasks seguidas no mesmo intervalo, e portanto
+	  * o tamanho das posições (e o custo de as comparar) cresce apenas com a profundidade da recursão.
+	  *
+	  * Uma task buffered pode ser necessária para desbloquear as tasks que estão a correr (que esperam pelo
+	  * commit das tasks que as precedem), por isso quando todos os workers ficam bloqueados com tasks ainda
+	  * na queue é criado imediatamente um worker extra, que termina quando deixar de ter trabalho. Como a
+	  * task escolhida é sempre a menos especulativa, o worker extra corre a task que desbloqueia as
+	  * restantes, e deixa de ser necessário o DeadlockDetectorThread.
+	  **/
+	static final class WorkStealingPool {
+		/** Espaço máximo deixado entre uma task e a task seguinte, numa componente da posição **/
+		private static final long ORDER_GAP = 1L << 32;
+		/** Posição da task inicial (submetida de fora da pool) **/
+		private static final long[] ROOT_ORDER = { 0 };
+
+		private static final Comparator<SpeculationTask> PROGRAM_ORDER = new Comparator<SpeculationTask>() {
+			public int compare(SpeculationTask t1, SpeculationTask t2) {
+				return compareOrder(t1._programOrder, t2._programOrder);
+			}
+		};
+
+		final class Worker implements Runnable {
+			final PriorityBlockingQueue<SpeculationTask> _tasks = newQueue();
+			final SpeculationTaskWorkerThread _thread;
+			volatile boolean _parked;
+
+			Worker() {
+				_thread = new SpeculationTaskWorkerThread(this);
+				_thread._worker = this;
+			}
+
+			public void run() {
+				while (true) {
+					SpeculationTask task = nextTask(this);
+					if (task == null) {
+						if (!park(this)) return;
+						continue;
+					}
+					_thread.setCurrentSpeculationTask(task);
+					task.run();
+					_completedTasks++;
+				}
+			}
+		}
+
+		private final int _parallelism = threadPoolSize();
+		private final List<Worker> _workers = new CopyOnWriteArrayList<Worker>();
+		private final Queue<Worker> _idleWorkers = new ConcurrentLinkedQueue<Worker>();
+		// Tasks submetidas por threads que não são workers (a task de bootstrap)
+		private final PriorityBlockingQueue<SpeculationTask> _externalTasks = newQueue();
+		// Número de tasks buffered, em todas as queues
+		private final AtomicInteger _queuedTasks = new AtomicInteger();
+		// Número de workers bloqueados à espera do resultado de outra task
+		private final AtomicInteger _blockedWorkers = new AtomicInteger();
+		private long _completedTasks;
+
+		WorkStealingPool() {
+			for (int i = 0; i < _parallelism; i++) addWorker();
+		}
+
+		private static PriorityBlockingQueue<SpeculationTask> newQueue() {
+			return new PriorityBlockingQueue<SpeculationTask>(BUFFER_SIZE, PROGRAM_ORDER);
+		}
+
+		private synchronized void addWorker() {
+			Worker worker = new Worker();
+			_workers.add(worker);
+			worker._thread.start();
+		}
+
+		boolean tryExecute(SpeculationTask task) {
+			if (_queuedTasks.incrementAndGet() > BUFFER_SIZE) {
+				_queuedTasks.decrementAndGet();
+				return false;
+			}
+
+			Thread thread = Thread.currentThread();
+			if (thread instanceof SpeculationTaskWorkerThread) {
+				SpeculationTaskWorkerThread workerThread = (SpeculationTaskWorkerThread) thread;
+				SpeculationTask spawner = workerThread.currentSpeculationTask();
+				task._programOrder = programOrder(spawner, spawner._childTask);
+				workerThread._worker._tasks.offer(task);
+			} else {
+				task._programOrder = ROOT_ORDER;
+				_externalTasks.offer(task);
+			}
+
+			Worker idle = _idleWorkers.poll();
+			if (idle != null) {
+				idle._parked = false;
+				LockSupport.unpark(idle._thread);
+			}
+			return true;
+		}
+
+		/** Posição em program order de uma task spawned por spawner, e que vai ficar antes de successor
+		  * (a childTask actual de spawner, se existir)
+		  **/
+		private static long[] programOrder(SpeculationTask spawner, SpeculationTask successor) {
+			return between(spawner._programOrder, successor != null ? successor._programOrder : null);
+		}
+
+		/** Devolve uma posição estritamente entre a e b (ou depois de a, se b for null).
+		  *
+		  * As posições geradas nunca terminam em 0, para que entre a e a + [0] nunca seja necessária uma
+		  * posição (que não existiria).
+		  **/
+		private static long[] between(long[] a, long[] b) {
+			assert (b == null || compareOrder(a, b) < 0);
+			int i = 0;
+			if (b != null) {
+				while (i < a.length && a[i] == b[i]) i++;
+
+				if (i == a.length) {
+					// a é prefixo de b: a nova posição é a + [x], com x entre 0 e a componente seguinte de b
+					long next = b[i];
+					if (next > 1) return append(a, choose(0, next));
+					return next == 1 ? append(append(a, 0), ORDER_GAP) : between(append(a, 0), b);
+				}
+
+				if (b[i] - a[i] > 1) {
+					long[] order = Arrays.copyOf(a, i + 1);
+					order[i] = choose(a[i], b[i]);
+					return order;
+				}
+			}
+
+			// Sem espaço na componente i: qualquer posição depois de a que mantenha a[0..i] serve
+			int last = a.length - 1;
+			if ((b == null || last > i) && a[last] <= Long.MAX_VALUE - ORDER_GAP) {
+				long[] order = a.clone();
+				order[last] += ORDER_GAP;
+				return order;
+			}
+			return append(a, ORDER_GAP);
+		}
+
+		/** Valor entre lo e hi (exclusive, com hi - lo > 1); grandes intervalos são usados a partir do inicio,
+		  * para que várias tasks seguidas no mesmo intervalo não o esgotem rapidamente
+		  **/
+		private static long choose(long lo, long hi) {
+			return lo + Math.min((hi - lo) / 2, ORDER_GAP);
+		}
+
+		private static long[] append(long[] order, long value) {
+			long[] result = Arrays.copyOf(order, order.length + 1);
+			result[order.length] = value;
+			return result;
+		}
+
+		private static int compareOrder(long[] o1, long[] o2) {
+			int length = Math.min(o1.length, o2.length);
+			for (int i = 0; i < length; i++) {
+				if (o1[i] != o2[i]) return o1[i] < o2[i] ? -1 : 1;
+			}
+			return o1.length - o2.length;
+		}
+
+		/** Retira a task menos especulativa de todas as queues, começando pela do próprio worker **/
+		private SpeculationTask nextTask(Worker worker) {
+			while (_queuedTasks.get() > 0) {
+				PriorityBlockingQueue<SpeculationTask> best = worker._tasks;
+				SpeculationTask bestTask = best.peek();
+				for (Worker w : _workers) {
+					SpeculationTask t = w._tasks.peek();
+					if (t != null && (bestTask == null || PROGRAM_ORDER.compare(t, bestTask) < 0)) {
+						best = w._tasks;
+						bestTask = t;
+					}
+				}
+				if (bestTask == null) {
+					best = _externalTasks;
+					bestTask = best.peek();
+				}
+
+				// Se a task entretanto foi retirada por outro worker, a escolha é repetida
+				if (bestTask != null && best.remove(bestTask)) {
+					_queuedTasks.decrementAndGet();
+					return bestTask;
+				}
+				// Task já foi contada, mas ainda não chegou à queue
+				if (bestTask == null) Thread.yield();
+			}
+			return null;
+		}
+
+		/** Espera por novas tasks. Retorna false se o worker deve terminar (workers extra). **/
+		private boolean park(Worker worker) {
+			if (_workers.size() > _parallelism) {
+				synchronized (this) {
+					if (_workers.size() > _parallelism) {
+						_workers.remove(worker);
+						return false;
+					}
+				}
+			}
+
+			worker._parked = true;
+			_idleWorkers.offer(worker);
+			// Uma task pode ter sido submetida antes do worker ficar visivel em _idleWorkers
+			if (_queuedTasks.get() > 0 && _idleWorkers.remove(worker)) {
+				worker._parked = false;
+				return true;
+			}
+			while (worker._parked) LockSupport.park(this);
+			return true;
+		}
+
+		/** Verifica se existe uma task buffered que precede task em program order, sem workers livres para a
+		  * executar
+		  **/
+		boolean hasOlderTask(SpeculationTask task) {
+			if (_queuedTasks.get() == 0 || !_idleWorkers.isEmpty()) return false;
+			for (Worker w : _workers) {
+				SpeculationTask t = w._tasks.peek();
+				if (t != null && PROGRAM_ORDER.compare(t, task) < 0) return true;
+			}
+			return false;
+		}
+
+		void workerBlocked() {
+			if (_blockedWorkers.incrementAndGet() >= _workers.size() && _queuedTasks.get() > 0 &&
+				_idleWorkers.isEmpty()) {
+				addWorker();
+			}
+		}
+
+		void workerUnblocked() {
+			_blockedWorkers.decrementAndGet();
+		}
+	}
+
 	/** Singleton executor **/
-	private static final ThreadPoolExecutor _executor = new ThreadPoolExecutor();
+	private static final ThreadPoolExecutor _executor = Options.WORKSTEALING ? null : new ThreadPoolExecutor();
+	private static final WorkStealingPool _workStealingPool = Options.WORKSTEALING ? new WorkStealingPool() : null;
 
 	// FIXME: Acabar com isto e consultar directamente o _workingThreads?
 	private static volatile boolean _hasFreeThreads = true;
 
 	// Acesso às queues, para implementar o hasFreeThreads
 	private static final HybridQueue _hybridQueue
-		= Options.HYBRIDQUEUE ? (HybridQueue) (BlockingQueue<?>) _executor.getQueue() : null;
+		= _executor != null && Options.HYBRIDQUEUE ? (HybridQueue) (BlockingQueue<?>) _executor.getQueue() : null;
 	private static final ArrayBlockingQueue<Runnable> _arrayQueue
-		= Options.HYBRIDQUEUE ? (ArrayBlockingQueue<Runnable>) _hybridQueue._currentQueue : null;
+		= _hybridQueue != null ? (ArrayBlockingQueue<Runnable>) _hybridQueue._currentQueue : null;
 
 	/** Verificação barata do estado da threadpool. **/
 	public static boolean hasFreeThreads() {
+		if (Options.WORKSTEALING) return _workStealingPool._queuedTasks.get() < BUFFER_SIZE;
 		if (Options.HYBRIDQUEUE && !_hybridQueue._fallback) {
 			return jaspex.util.Unsafe.UNSAFE.getInt(_arrayQueue, COUNT_FIELD_OFFSET) < BUFFER_SIZE;
 		}
@@ -214,11 +477,13 @@ public final class Executor {
 
 	/** Número aproximado de tarefas completadas pela ThreadPool. **/
 	public static long getCompletedTaskCount() {
+		if (Options.WORKSTEALING) return _workStealingPool._completedTasks;
 		return _executor.getCompletedTaskCount();
 	}
 
 	/** Execute que retorna valor boleano com sucesso em vez de excepção. **/
 	public static boolean tryExecute(SpeculationTask task) {
+		if (Options.WORKSTEALING) return _workStealingPool.tryExecute(task);
 		try {
 			_executor.execute(task);
 			return true;
@@ -227,9 +492,26 @@ public final class Executor {
 		}
 	}
 
+	/** Usado pelo -preemption: verifica se task (a task actual) está a ocupar uma thread que devia ser usada
+	  * por uma task buffered menos especulativa. Tasks a menos de PREEMPT_DISTANCE do head nunca cedem a
+	  * thread, já que vão fazer commit em breve.
+	  **/
+	static boolean shouldPreempt(SpeculationTask task) {
+		return _workStealingPool.hasOlderTask(task) && task.speculationDistance() >= PREEMPT_DISTANCE;
+	}
+
+	/** Chamados à volta de esperas pelo resultado de outra task, usados pelo -workstealing **/
+	static void workerBlocked() {
+		_workStealingPool.workerBlocked();
+	}
+
+	static void workerUnblocked() {
+		_workStealingPool.workerUnblocked();
+	}
+
 	static {
-		// Iniciar detector deadlocks
-		if (Options.HYBRIDQUEUE) new DeadlockDetectorThread(_executor).start();
+		// Iniciar detector deadlocks (o -workstealing não precisa dele)
+		if (Options.HYBRIDQUEUE && !Options.WORKSTEALING) new DeadlockDetectorThread(_executor).start();
 	}
 
 	/** Thread usada para detectar deadlocks na pool quando não se usa uma SynchronousQueue **/
@@ -26,18 +26,35 @@ import java.util.concurrent.TimeUnit;
 /** Implementação de Future simples para ser usada no lugar de uma SpeculationTask, quando uma especulação
   * não é aceite.
   **/
-final class NoSpeculationFuture implements Future<Object> {
+final class NoSpeculationFuture implements Future<Object>, PrimitiveFuture {
+
+	private static final NoSpeculationFuture ZERO_RESULT = new NoSpeculationFuture(null, 0);
 
 	private final Object _returnValue;
+	private final long _primitiveValue;
 
 	NoSpeculationFuture(Object returnValue) {
+		this(returnValue, 0);
+	}
+
+	private NoSpeculationFuture(Object returnValue, long primitiveValue) {
 		_returnValue = returnValue;
+		_primitiveValue = primitiveValue;
+	}
+
+	static NoSpeculationFuture newPrimitiveFuture(long primitiveValue) {
+		if (primitiveValue == 0) return ZERO_RESULT;
+		return new NoSpeculationFuture(null, primitiveValue);
 	}
 
 	@Override public Object get() {
 		return _returnValue;
 	}
 
+	@Override public long getPrimitive() {
+		return _primitiveValue;
+	}
+
 	@Override public boolean isDone() { throw new Error("Not Implemented"); }
 	@Override public boolean cancel(boolean mayInterruptIfRunning) { throw new Error("Not Implemented"); }
 	@Override public Object get(long timeout, TimeUnit unit) { throw new Error("Not Implemented"); }
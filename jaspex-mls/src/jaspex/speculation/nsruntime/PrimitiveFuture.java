@@ -0,0 +1,32 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.speculation.nsruntime;
+
+/** Futuro usado com -primitivefutures para especulações de métodos que retornam tipos primitivos (ou void).
+  *
+  * O resultado é codificado num long: tipos inteiros (int, boolean, byte, char, short) são extendidos, floats e
+  * doubles são guardados através do Float.floatToRawIntBits / Double.doubleToRawLongBits, e métodos void
+  * devolvem 0. A descodificação é feita pelo código inserido pelo DelayGetFutureMethodVisitor.
+  **/
+public interface PrimitiveFuture {
+	public long getPrimitive();
+}
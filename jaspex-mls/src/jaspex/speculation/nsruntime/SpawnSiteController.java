@@ -0,0 +1,123 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.speculation.nsruntime;
+
+import jaspex.Options;
+import jaspex.speculation.runtime.IndySpawnHelper;
+
+/** Controlador usado pelo -adaptivespawn, que decide por spawn site se vale a pena especular.
+  *
+  * Os spawn sites são identificados pelo id devolvido pelo Callable.spawnSiteId() (o id da classe codegen, ou
+  * um id atribuido pelo IndySpawnHelper a cada call site). Para cada site são contados os commits, as falhas
+  * (aborts e falhas de validação) e o tempo de execução especulativa das tasks; ao fim de cada janela de
+  * WINDOW tasks, um site com demasiadas falhas ou com tasks demasiado pequenas para compensar o custo do spawn
+  * é desactivado durante um número de spawns que duplica sempre que o site volta a ser testado e continua a não
+  * compensar.
+  *
+  * Com -tieredspawn, um site que continua a não compensar depois de ter sido desactivado durante
+  * TIER_DOWN_BACKOFF spawns é abandonado, e o IndySpawnHelper é avisado, para que os métodos em que todos os
+  * sites foram abandonados passem a usar a sua versão $non_speculative.
+  *
+  * Todo o acesso ao estado dos sites é feito sem locks (apenas a criação de novas entradas é sincronizada), e
+  * os contadores são actualizados de forma racy: tal como as restantes estatísticas, basta que sejam
+  * aproximados.
+  **/
+final class SpawnSiteController {
+
+	// Número de tasks observadas antes de reavaliar um site
+	private static final int WINDOW = 16;
+	// Tempo médio (em ns) abaixo do qual uma task não compensa o custo do spawn
+	private static final long MIN_TASK_NANOS = 20 * 1000;
+	// Máximo de spawns rejeitados seguidos num site desactivado
+	private static final int MAX_BACKOFF = 1 << 16;
+	// Backoff a partir do qual o -tieredspawn desiste do site
+	private static final int TIER_DOWN_BACKOFF = 1 << 10;
+
+	private static final class SiteState {
+		int _commits;
+		int _failures;
+		long _taskNanos;
+		// Número de spawns a rejeitar antes de voltar a testar o site
+		int _skip;
+		// Valor do _skip da última vez que o site foi desactivado
+		int _backoff;
+	}
+
+	private static volatile SiteState[] _sites = new SiteState[64];
+
+	private SpawnSiteController() { }
+
+	/** Chamado no inicio do spawnSpeculation **/
+	static boolean shouldSpeculate(int siteId) {
+		SiteState site = site(siteId);
+		if (site._skip > 0) {
+			site._skip--;
+			return false;
+		}
+		return true;
+	}
+
+	/** Chamado quando termina a transacção de uma task spawned a partir do site siteId **/
+	static void taskFinished(int siteId, boolean committed, long taskNanos) {
+		SiteState site = site(siteId);
+		if (committed) site._commits++;
+		else site._failures++;
+		site._taskNanos += taskNanos;
+
+		int tasks = site._commits + site._failures;
+		if (tasks < WINDOW) return;
+
+		if (site._failures > site._commits || site._taskNanos / tasks < MIN_TASK_NANOS) {
+			int backoff = site._backoff;
+			site._backoff = Math.min(MAX_BACKOFF, Math.max(WINDOW, backoff * 2));
+			site._skip = site._backoff;
+			if (Options.TIEREDSPAWN && backoff < TIER_DOWN_BACKOFF && site._backoff >= TIER_DOWN_BACKOFF) {
+				IndySpawnHelper.siteUnprofitable(siteId);
+			}
+		} else {
+			site._backoff = 0;
+		}
+		site._commits = 0;
+		site._failures = 0;
+		site._taskNanos = 0;
+	}
+
+	private static SiteState site(int siteId) {
+		SiteState[] sites = _sites;
+		if (siteId < sites.length) {
+			SiteState site = sites[siteId];
+			if (site != null) return site;
+		}
+		return newSite(siteId);
+	}
+
+	private static synchronized SiteState newSite(int siteId) {
+		SiteState[] sites = _sites;
+		if (siteId >= sites.length) {
+			sites = java.util.Arrays.copyOf(sites, Math.max(siteId + 1, sites.length * 2));
+		}
+		if (sites[siteId] == null) sites[siteId] = new SiteState();
+		_sites = sites;
+		return sites[siteId];
+	}
+
+}
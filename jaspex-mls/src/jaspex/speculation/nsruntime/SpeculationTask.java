@@ -27,6 +27,7 @@ import jaspex.speculation.runtime.Callable;
 import jaspex.stm.*;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.*;
 
@@ -155,7 +156,7 @@ final class FinishedFrozenTask extends FrozenTask {
   *
   * Para mais info ver também "Notas newspec" no wiki
   **/
-public final class SpeculationTask implements RunnableFuture<Object> {
+public final class SpeculationTask implements RunnableFuture<Object>, PrimitiveFuture {
 
 	private static final Logger Log = LoggerFactory.getLogger(SpeculationTask.class);
 
@@ -163,13 +164,30 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	protected Continuation _taskRunnable;
 
 	// Resultados
-	// Nota: Deveria esta variável ser volatile?
-	// Parece-me que no caso em que o parent faz set do result, e o filho só depois o vai ver (e portanto
-	// encontra-o logo, sem fazer sincronização), não existe nenhuma acção de sincronização explicita.
-	// O result em si tem fields final, portanto os objectos lá contidos estão seguros, mas não sei se as
-	// barreiras usadas para a implementação dos finals também garantem que outras alterações feitas pelo
-	// parent de forma racy (por exemplo escritas na STM) serão vistas pelo filho que observe o result.
-	private ExecutionResult _result;
+	// Nota: A variável é volatile para que o filho que encontra o result já escrito (sem fazer sincronização)
+	// veja também todas as alterações feitas pelo parent antes do setResult (por exemplo escritas na STM), e
+	// para que o -spinhandoff possa esperar por ela sem usar o monitor da task.
+	private volatile ExecutionResult _result;
+
+	// Suporte para -spinhandoff
+	// Threads à espera do resultado, numa lista ligada (como na FutureTask)
+	private volatile WaitNode _waiters;
+	// Instante (System.nanoTime()) em que o resultado foi escrito, usado para calibrar o spin
+	private long _resultTimestamp;
+
+	private static final class WaitNode {
+		final Thread _thread = Thread.currentThread();
+		WaitNode _next;
+	}
+
+	private static final long WAITERS_OFFSET = Transaction.getFieldOffset(SpeculationTask.class, "_waiters");
+	// Tempo máximo de spin; esperas mais longas que isto são feitas sempre com park
+	private static final long MAX_SPIN_NANOS = 50 * 1000;
+	private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+	// Média (exponencial) do tempo entre o inicio da espera e a escrita do resultado pelo parent, e tempo de
+	// spin calculado a partir dela. Actualizados de forma racy, basta que sejam aproximados.
+	private static long _avgHandoffNanos = MAX_SPIN_NANOS / 4;
+	private static long _spinNanos = MULTIPROCESSOR ? MAX_SPIN_NANOS / 2 : 0;
 
 	// Child SpeculationTask, se existir
 	// De notar que isto pode mudar conforme novas especulações são spawned
@@ -179,6 +197,9 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	// de uma child que foi herdada do parent (ou seja, distinguir entre alterações feitas ao _childTask pelo
 	// setChildTask ou pelo inheritChildTask)
 	protected boolean _childInherited;
+	// Task que nos precede em program order (a que tem esta task como _childTask), enquanto ainda não nos
+	// passou o resultado; usado pelo -multiversion e pelo -preemption
+	private volatile SpeculationTask _parentTask;
 
 	// Usado para guardar estado frozen da task *actual*
 	// Este field mais tarde será verificado pelo parent quando faz o setResult
@@ -196,6 +217,41 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	// Suporte para dummy transactions
 	private final boolean _useDummyTx;
 
+	// Suporte para -adaptivespawn
+	// Spawn site que originou esta task (ver SpawnSiteController), e tempo de execução especulativa da task,
+	// medido da mesma forma que no profiling
+	private final int _spawnSiteId;
+	private ProfilingInfo _siteTiming;
+
+	// Suporte para -workstealing
+	// Posição da task em program order, atribuida quando é submetida (ver Executor.WorkStealingPool)
+	long[] _programOrder;
+
+	// Suporte para -checkpoints
+	// Checkpoints tirados durante a transacção actual, pela ordem em que foram tirados
+	private ArrayList<Checkpoint> _checkpoints;
+
+	private static final class Checkpoint {
+		// Continuação capturada dentro da barreira de leitura onde o checkpoint foi tirado
+		final Continuation _continuation;
+		// Tamanho do read-set e write-set quando o checkpoint foi tirado
+		final int _readCount;
+		final int _writeCount;
+		// Child task nesse momento; tasks spawned depois do checkpoint vão ser spawned novamente
+		// pela re-execução
+		final SpeculationTask _childTask;
+		final boolean _childInherited;
+
+		Checkpoint(Continuation continuation, int readCount, int writeCount,
+			SpeculationTask childTask, boolean childInherited) {
+			_continuation = continuation;
+			_readCount = readCount;
+			_writeCount = writeCount;
+			_childTask = childTask;
+			_childInherited = childInherited;
+		}
+	}
+
 	// Suporte para estatísticas extra
 	// Método que o parent foi executar (e que foi substituido pelo spawnSpeculation)
 	private final String _parentInfo;
@@ -206,6 +262,9 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	public static long _committedSpeculations = 0;
 	public static long _abortedSpeculations = 0;
 	public static long _failedSpeculations = 0;
+	public static long _earlyFailedSpeculations = 0;
+	public static long _checkpointResumes = 0;
+	public static long _preemptedSpeculations = 0;
 	public static long _correctPredictions = 0;
 	public static long _wrongPredictions = 0;
 
@@ -221,16 +280,18 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	private static final int PROFILING_OUTPUT_VERSION = 2;
 	private ProfilingInfo _profiling = null;
 
-	SpeculationTask(String parentInfo, String taskSource, boolean useDummyTx) {
+	SpeculationTask(String parentInfo, String taskSource, boolean useDummyTx, int spawnSiteId) {
 		_parentInfo = parentInfo;
 		_taskSource = taskSource;
 		_useDummyTx = useDummyTx;
+		_spawnSiteId = spawnSiteId;
 	}
 
 	SpeculationTask(Callable parent, String taskSource) {
-		this(Options.TXSTATS || Options.TXABORTSTATS || Options.PROFILE ? parent.getClass().getName() : null,
+		this(Options.TXSTATS || Options.TXABORTSTATS || Options.PROFILE ? parent.name() : null,
 			taskSource,
-			Options.ALLOWDUMMYTX ? parent.useDummyTransaction() : false);
+			Options.ALLOWDUMMYTX ? parent.useDummyTransaction() : false,
+			Options.ADAPTIVESPAWN ? parent.spawnSiteId() : -1);
 
 		if (Options.RVP) _parentCallable = (PredictableCallable) parent;
 	}
@@ -239,7 +300,7 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 	static SpeculationTask bootstrapTask(Continuation bootstrapMethod) {
 		SpeculationTask speculationTask = new SpeculationTask(
 			String.format("%" + CodegenHelper.CODEGEN_CLASS_PREFIX.length() +
-					"sBOOTSTRAP.BOOTSTRAP$speculative", ""), "BOOTSTRAP", false);
+					"sBOOTSTRAP.BOOTSTRAP$speculative", ""), "BOOTSTRAP", false, -1);
 		speculationTask._taskRunnable = bootstrapMethod;
 		speculationTask._result = ExecutionResult.newObjectResult(null);
 		return speculationTask;
@@ -257,6 +318,10 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 		//Log.debug("picked up {}", this);
 		if (_result == null) {
 			new Transaction(this, _useDummyTx);
+			if (Options.ADAPTIVESPAWN && _spawnSiteId >= 0) {
+				_siteTiming = new ProfilingInfo();
+				_siteTiming.startInterval();
+			}
 		} else if (_result == ExecutionResult.ABORT_SPECULATION) {
 			// Task já foi aborted, mesmo antes de ser iniciada
 
@@ -304,6 +369,9 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 
 		SpeculationTask current = current();
 
+		// A partir daqui a task só espera pelo parent, o que não conta para o -adaptivespawn
+		if (Options.ADAPTIVESPAWN) current.siteTimingStop();
+
 		// Esperar que o nosso parent seja committed e que passemos a estar em program order
 		current.waitForResult(true, null);
 
@@ -315,10 +383,15 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 			if (Transaction.commit()) {
 				if (Options.PROFILE) profilingFinishedTx(true);
 				_committedSpeculations++;
+				if (Options.ADAPTIVESPAWN) current.siteFinished(true);
+				current._checkpoints = null;
 				// Transacção foi commited, ou seja o que foi feito até agora validou
 				// correctamente, podemos prosseguir a execução
 				return;
 			}
+
+			// Validação falhou; se possível, re-executar apenas a partir do último checkpoint válido
+			if (Options.CHECKPOINTS) current.resumeFromCheckpoint();
 		}
 
 		transactionAbort(doomed || current._result.isObject());
@@ -343,6 +416,102 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 		throw new AssertionError("Should never happen");
 	}
 
+	/** Usado pelo -checkpoints, chamado pela STM dentro de uma barreira de leitura. Devolve false depois de
+	  * tirar o checkpoint (ou se não foi possível tirá-lo), e true quando a execução é retomada a
+	  * partir dele.
+	  **/
+	public static boolean checkpoint(int readCount, int writeCount) {
+		Continuation c = ContSpeculationControl.tryCaptureContinuation();
+		if (c == null) return false;
+		if (c.isResumed()) return true;
+
+		SpeculationTask current = current();
+		if (current._checkpoints == null) current._checkpoints = new ArrayList<Checkpoint>();
+		current._checkpoints.add(new Checkpoint(c, readCount, writeCount,
+			current._childTask, current._childInherited));
+		return false;
+	}
+
+	/** Usado pelo -checkpoints, depois de a validação da transacção actual falhar (já em program order).
+	  * Se existir um checkpoint tirado antes da primeira leitura inválida, fazemos commit da parte da
+	  * transacção anterior a esse checkpoint, e retomamos a execução (fora de transacção) a partir dele.
+	  * Caso contrário, retorna e a transacção é abortada normalmente.
+	  **/
+	private void resumeFromCheckpoint() {
+		ArrayList<Checkpoint> checkpoints = _checkpoints;
+		_checkpoints = null;
+		if (checkpoints == null) return;
+
+		int firstInvalid = Transaction.firstInvalidRead();
+		// Leituras válidas, validação falhou por outro motivo
+		if (firstInvalid < 0) return;
+
+		Checkpoint checkpoint = null;
+		for (Checkpoint cp : checkpoints) {
+			if (cp._readCount > firstInvalid) break;
+			checkpoint = cp;
+		}
+		if (checkpoint == null) return;
+
+		// Todas as leituras antes do checkpoint são válidas, e como estamos em program order
+		// ninguém as pode invalidar entretanto
+		Transaction.commitPrefix(checkpoint._readCount, checkpoint._writeCount);
+		if (Options.PROFILE) profilingFinishedTx(true);
+		_failedSpeculations++;
+		_checkpointResumes++;
+		if (Options.ADAPTIVESPAWN) siteFinished(false);
+
+		// Tasks spawned depois do checkpoint deixam de ser reachable, e vão ser spawned novamente
+		if (_childTask != checkpoint._childTask) abortChildTask();
+		_childTask = checkpoint._childTask;
+		_childInherited = checkpoint._childInherited;
+
+		ContSpeculationControl.resumeContinuation(checkpoint._continuation);
+	}
+
+	/** Usado pelo -incrementalvalidation e -eagerinvalidation, quando a transacção actual leu valores
+	  * que já não são válidos. Em vez de esperar que o parent termine para falhar a validação, fazemos logo abort e devolvemos
+	  * a thread à pool; a re-execução da task (já em program order) fica a cargo do parent, através
+	  * de uma ContinuationFrozenTask com a continuação do ponto de spawn.
+	  **/
+	public static void abortDoomedTransaction() {
+		SpeculationTask current = current();
+
+		// Sem freeze não temos como passar a re-execução para o parent; e se o resultado já chegou,
+		// já estamos em program order
+		if (Options.NOFREEZE || current._freezeInhibit || current._result != null) {
+			waitCurrentTransactionCommit(true);
+			throw new AssertionError("Should never happen");
+		}
+
+		Continuation taskRunnable = current.getAndCleanTaskRunnable();
+
+		// Cuidado que alterações aqui provavelmente têm que ser mirrored no waitCurrentTransactionCommit()
+		transactionAbort(true);
+		_earlyFailedSpeculations++;
+		abortChildTask();
+
+		boolean frozen = false;
+		synchronized (current) {
+			if (current._result == null) {
+				current._frozenTask = new ContinuationFrozenTask(current, null, taskRunnable);
+				frozen = true;
+				if (Options.PROFILE) profilingPause();
+			}
+		}
+
+		// A partir daqui a task pode ser re-executada a qualquer momento pelo parent
+		if (frozen) ContSpeculationControl.returnWorkerToPool();
+
+		// Resultado foi escrito pelo parent entretanto
+		if (current._result == ExecutionResult.ABORT_SPECULATION) {
+			ContSpeculationControl.returnWorkerToPool();
+		} else {
+			ContSpeculationControl.resumeContinuation(taskRunnable);
+		}
+		throw new AssertionError("Should never happen");
+	}
+
 	@Override
 	public Object get() {
 		if (Options.RVP && _result == null) {
@@ -373,6 +542,16 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 			}
 		}
 
+		return getResult()._object;
+	}
+
+	@Override
+	public long getPrimitive() {
+		return getResult()._primitive;
+	}
+
+	/** Espera pelo resultado, para ser devolvido pelo get() ou getPrimitive() **/
+	private ExecutionResult getResult() {
 		boolean getFromParent = (this == current());
 
 		waitForResult(getFromParent, null);
@@ -385,7 +564,7 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 		// mas ainda não podemos tentar fazer commit, porque o nosso parent ainda não foi validado.
 		if (getFromParent) waitCurrentTransactionCommit();
 
-		if (_result.isObject()) return _result._object;
+		if (_result.isObject()) return _result;
 
 		// Este caso é algo estranho:
 		// - No caso de getFromParent == true, se o resultado for uma excepção, esta já foi
@@ -428,10 +607,18 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 				// abort de qualquer forma
 				_predictedResult = result._object;
 			}
+			if (Options.SPINHANDOFF) _resultTimestamp = System.nanoTime();
 			_result = result;
-			notifyAll();
+			if (!Options.SPINHANDOFF) notifyAll();
 		}
 
+		if (Options.SPINHANDOFF) wakeWaiters();
+
+		// A partir daqui o parent já fez commit e não volta a ser consultado (nem pelo speculationDistance(),
+		// nem pelo VersionedValues.find()); não o manter reachable, para que cada task viva não retenha toda
+		// a cadeia de tasks que a precederam
+		if (Options.MULTIVERSION || Options.PREEMPTION) _parentTask = null;
+
 		if (Options.RVP) {
 			// Estatísticas RVP
 			// Não completamente precisas no caso da previsão ser null
@@ -450,6 +637,10 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 				// task actual pode ter que ser re-executada depois de sinalizar o abort da child
 				_frozenTask.abortFrozen();
 				if (Options.PROFILE) profilingResume();
+			} else if (Options.ASYNCCOMMIT && _frozenTask instanceof FinishedFrozenTask) {
+				// Commit da task (e o setResult seguinte) é feito pelo Committer, e a thread actual
+				// volta logo à pool
+				Committer.enqueue(_frozenTask);
 			} else {
 				if (Options.PROFILE) profilingEnd();
 				// Assume-se que a task actual já não vai fazer mais nada. De notar que em alguns
@@ -463,7 +654,7 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 
 	/** Método que espera que este SpeculationTask tenha sido populado com um resultado pelo Pai **/
 	private void waitForResult(boolean ownTask, ExtendedResult taskResult) {
-		// Isto talvez seja uma race? Ver nota junto à declaração do field.
+		// Ver nota junto à declaração do field
 		if (_result != null) return;
 
 		if (!Options.NOFREEZE && (Options.CONTFREEZE || taskResult != null) && ownTask && !_freezeInhibit) {
@@ -471,15 +662,69 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 			if (_result != null) return;
 		}
 
+		if (Options.SPINHANDOFF) {
+			spinThenPark();
+			return;
+		}
+
 		synchronized(this) {
+			boolean blocked = Options.WORKSTEALING && _result == null;
+			if (blocked) Executor.workerBlocked();
 			while (_result == null) try {
 				//Log.debug(Thread.currentThread() + " Waiting for result on " + this);
 				if (Options.PROFILE) profilingAwait();
 				else wait();
 			} catch (InterruptedException e) { throw new Error(e); }
+			if (blocked) Executor.workerUnblocked();
 		}
 	}
 
+	/** Espera pelo resultado sem usar o monitor da task (-spinhandoff): faz spin durante um tempo calibrado a
+	  * partir das esperas anteriores, e se o resultado ainda não tiver chegado faz park da thread actual, até
+	  * ser acordada pelo setResult.
+	  **/
+	private void spinThenPark() {
+		long start = System.nanoTime();
+		long spinNanos = _spinNanos;
+		while (_result == null && System.nanoTime() - start < spinNanos) { }
+
+		if (_result == null) {
+			WaitNode node = new WaitNode();
+			WaitNode head;
+			do {
+				head = _waiters;
+				node._next = head;
+			} while (!jaspex.util.Unsafe.UNSAFE.compareAndSwapObject(this, WAITERS_OFFSET, head, node));
+
+			if (Options.WORKSTEALING) Executor.workerBlocked();
+			// O setResult escreve o _result antes de ler a lista, portanto ou vemos aqui o resultado, ou o
+			// nosso node vai ser acordado
+			while (_result == null) LockSupport.park(this);
+			if (Options.WORKSTEALING) Executor.workerUnblocked();
+		}
+
+		calibrateSpin(Math.max(0, _resultTimestamp - start));
+	}
+
+	/** Acorda todas as threads que fizeram park à espera do resultado **/
+	private void wakeWaiters() {
+		WaitNode node;
+		do {
+			node = _waiters;
+		} while (node != null && !jaspex.util.Unsafe.UNSAFE.compareAndSwapObject(this, WAITERS_OFFSET, node, null));
+
+		for (; node != null; node = node._next) LockSupport.unpark(node._thread);
+	}
+
+	/** Actualiza o tempo de spin: só compensa fazer spin quando o resultado normalmente chega pouco depois de
+	  * se começar a esperar por ele (e nunca com apenas um processador)
+	  **/
+	private static void calibrateSpin(long handoffNanos) {
+		long avg = _avgHandoffNanos + ((handoffNanos - _avgHandoffNanos) >> 3);
+		_avgHandoffNanos = avg;
+		_spinNanos = (MULTIPROCESSOR && avg <= MAX_SPIN_NANOS) ? Math.min(MAX_SPIN_NANOS, avg * 2) : 0;
+	}
+
 	/** Verifica se pai atirou excepção, e faz rethrow dela no filho **/
 	static void checkThrowable() {
 		ExecutionResult result = current()._result;
@@ -511,21 +756,57 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 
 	private static void transactionAbort(boolean failedValidation) {
 		Transaction.abort();
+		if (Options.CHECKPOINTS) current()._checkpoints = null;
 		if (Options.PROFILE) profilingFinishedTx(false);
+		if (Options.ADAPTIVESPAWN) current().siteFinished(false);
 		if (failedValidation) _failedSpeculations++;
 		else _abortedSpeculations++;
 	}
 
+	private void siteTimingStop() {
+		if (_siteTiming != null && _siteTiming._intervalStartTS > 0) _siteTiming.endInterval(true);
+	}
+
+	/** Usado pelo -adaptivespawn: comunica ao SpawnSiteController o resultado da transacção desta task **/
+	private void siteFinished(boolean committed) {
+		if (_siteTiming == null) return;
+		siteTimingStop();
+		SpawnSiteController.taskFinished(_spawnSiteId, committed, _siteTiming._accumulatedTimeInTx);
+		_siteTiming = null;
+	}
+
 	static void inheritChildTask(SpeculationTask speculationTask) {
 		SpeculationTask current = current();
 		current._childTask = speculationTask;
 		current._childInherited = true;
+		if ((Options.MULTIVERSION || Options.PREEMPTION) && speculationTask != null) {
+			speculationTask._parentTask = current;
+		}
 	}
 
 	static void setChildTask(SpeculationTask speculationTask) {
 		SpeculationTask current = current();
 		current._childTask = speculationTask;
 		current._childInherited = false;
+		if (Options.MULTIVERSION || Options.PREEMPTION) speculationTask._parentTask = current;
+	}
+
+	/** Task que precede esta em program order, se conhecida e se ainda não passou o resultado a esta task
+	  * (apenas mantido com -multiversion e -preemption)
+	  **/
+	public SpeculationTask predecessor() {
+		return _parentTask;
+	}
+
+	/** Distância da task ao head: número de tasks que a precedem em program order e que ainda não lhe
+	  * passaram o resultado (0 se a task já está em program order). Usado pelo -preemption.
+	  **/
+	int speculationDistance() {
+		int distance = 0;
+		for (SpeculationTask task = this; task != null && task._result == null; task = task._parentTask) {
+			distance++;
+		}
+		return distance;
 	}
 
 	/** Este método não é privado apenas para poder ser chamado pela FrozenTask **/
@@ -585,34 +866,61 @@ public final class SpeculationTask implements RunnableFuture<Object> {
 		} catch (FreezeWorkaroundException e) { return; }
 
 		if ((c == null) || !c.isResumed()) { // Executado pela thread que vai fazer freeze
-			SpeculationTask specTask = current();
-			Transaction transaction = Transaction.current();
-
-			boolean alreadyFinished = true;
-
-			if (specTask._result == null) {
-				synchronized (specTask) {
-					if (specTask._result == null) {
-						specTask._frozenTask = (c == null) ?
-							new FinishedFrozenTask(specTask, transaction, taskResult) :
-							new ContinuationFrozenTask(specTask, transaction, c);
-						alreadyFinished = false;
-						if (Options.PROFILE) profilingPause();
-					}
-				}
-			}
+			freezeCurrent(taskResult, c);
+		}
 
-			// Resultado foi escrito pelo parent entretanto
-			if (alreadyFinished) return;
+		// Thread que faz thaw recomeça execução aqui, no caso da ContinuationFrozenTask
+	}
 
-			//Log.debug(Thread.currentThread() + " Frozen task " + specTask);
+	/** Usado pelo -preemption para ceder a thread actual a uma task menos especulativa: faz freeze da task
+	  * actual, cuja execução é retomada (possivelmente noutra thread) quando o parent fizer setResult.
+	  *
+	  * Ao contrário do freeze(), não termina a execução quando não é possível capturar a continuação (por
+	  * exemplo dentro de um <clinit>); nesse caso, ou se a task já estiver em program order, retorna
+	  * imediatamente.
+	  **/
+	static void preempt() {
+		SpeculationTask current = current();
+		if (current._result != null || current._freezeInhibit) return;
 
-			Transaction.abort(); // Isto é só para limpar o ThreadLocal, não é um abort realmente
-			ContSpeculationControl.returnWorkerToPool();
-			throw new AssertionError("Should never happen");
+		Continuation c = ContSpeculationControl.tryCaptureContinuation();
+		if (c != null && !c.isResumed()) {
+			_preemptedSpeculations++;
+			freezeCurrent(null, c);
 		}
 
-		// Thread que faz thaw recomeça execução aqui, no caso da ContinuationFrozenTask
+		// Thread que faz thaw recomeça execução aqui
+	}
+
+	/** Regista a task actual como frozen e devolve a thread à pool. Retorna apenas se entretanto o
+	  * resultado já tiver sido escrito pelo parent.
+	  **/
+	private static void freezeCurrent(ExtendedResult taskResult, Continuation c) {
+		SpeculationTask specTask = current();
+		Transaction transaction = Transaction.current();
+
+		boolean alreadyFinished = true;
+
+		if (specTask._result == null) {
+			synchronized (specTask) {
+				if (specTask._result == null) {
+					specTask._frozenTask = (c == null) ?
+						new FinishedFrozenTask(specTask, transaction, taskResult) :
+						new ContinuationFrozenTask(specTask, transaction, c);
+					alreadyFinished = false;
+					if (Options.PROFILE) profilingPause();
+				}
+			}
+		}
+
+		// Resultado foi escrito pelo parent entretanto
+		if (alreadyFinished) return;
+
+		//Log.debug(Thread.currentThread() + " Frozen task " + specTask);
+
+		Transaction.detach(); // Isto é só para limpar o ThreadLocal, não é um abort realmente
+		ContSpeculationControl.returnWorkerToPool();
+		throw new AssertionError("Should never happen");
 	}
 
 	@Override
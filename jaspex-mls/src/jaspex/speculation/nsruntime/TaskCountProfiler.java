@@ -34,16 +34,16 @@ public final class TaskCountProfiler {
 
 	private static final Logger Log = LoggerFactory.getLogger(TaskCountProfiler.class);
 
-	private static final ConcurrentHashMap<Class<? extends Callable>, AtomicInteger> taskCounts =
-		new ConcurrentHashMap<Class<? extends Callable>, AtomicInteger>();
+	private static final ConcurrentHashMap<String, AtomicInteger> taskCounts =
+		new ConcurrentHashMap<String, AtomicInteger>();
 
 	public static void addTask(Callable task) {
-		Class<? extends Callable> taskClass = task.getClass();
-		AtomicInteger counter = taskCounts.get(taskClass);
+		String taskName = task.name();
+		AtomicInteger counter = taskCounts.get(taskName);
 
 		if (counter == null) {
 			AtomicInteger newCounter = new AtomicInteger();
-			counter = taskCounts.putIfAbsent(taskClass, newCounter);
+			counter = taskCounts.putIfAbsent(taskName, newCounter);
 			if (counter == null) counter = newCounter;
 		}
 
@@ -52,19 +52,19 @@ public final class TaskCountProfiler {
 
 	public static void printResults() {
 		@SuppressWarnings("unchecked")
-		Map.Entry<Class<? extends Callable>, AtomicInteger>[] entries =
+		Map.Entry<String, AtomicInteger>[] entries =
 			taskCounts.entrySet().toArray(new Map.Entry[0]);
-		Arrays.sort(entries, new Comparator<Map.Entry<Class<? extends Callable>, AtomicInteger>>() {
-			public int compare(Map.Entry<Class<? extends Callable>, AtomicInteger> e1,
-						Map.Entry<Class<? extends Callable>, AtomicInteger> e2) {
+		Arrays.sort(entries, new Comparator<Map.Entry<String, AtomicInteger>>() {
+			public int compare(Map.Entry<String, AtomicInteger> e1,
+						Map.Entry<String, AtomicInteger> e2) {
 				return e1.getValue().get() - e2.getValue().get();
 			}
 		});
 
 		StringBuilder out = new StringBuilder();
 		out.append("spawnSpeculation counts:\n");
-		for (Map.Entry<Class<? extends Callable>, AtomicInteger> entry : entries) {
-			out.append(CodegenHelper.codegenToOriginal(entry.getKey().getName()) + ' ' + entry.getValue() + '\n');
+		for (Map.Entry<String, AtomicInteger> entry : entries) {
+			out.append(CodegenHelper.codegenToOriginal(entry.getKey()) + ' ' + entry.getValue() + '\n');
 		}
 		Log.info(out.toString());
 	}
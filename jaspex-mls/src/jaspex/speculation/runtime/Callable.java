@@ -24,6 +24,15 @@ package jaspex.speculation.runtime;
 public abstract class Callable {
 	public abstract Object call();
 	public abstract Object call_nonspeculative();
+	/** Usados com -primitivefutures: se primitiveResult() devolver true, o call_primitive() executa o mesmo
+	  * método que o call(), mas devolve o resultado codificado num long (ver PrimitiveFuture)
+	  **/
+	public long call_primitive() { throw new AssertionError("Should never happen"); }
+	public boolean primitiveResult() { return false; }
+	/** Usado com -adaptivespawn para identificar o spawn site (ver SpawnSiteController) **/
+	public int spawnSiteId() { throw new AssertionError("Should never happen"); }
+	/** Nome usado nas estatísticas, no formato dos nomes das classes codegen (ver CodegenHelper.codegenToOriginal) **/
+	public String name() { return getClass().getName(); }
 	/** Usado para determinar se deve ser usada uma "dummy" transaction (ver Transaction) **/
 	public boolean useDummyTransaction() { return false; }
 }
@@ -86,9 +86,17 @@ public final class CodegenHelper {
 			_methodToIdMap.put(method, id);
 			_idToMethodMap.put(id, method);
 	        }
-	        return Type.fromCommon(CODEGEN_CLASS_PREFIX + id + "$"
-			+ method.owner().commonName().replace('.', '_') + "."
-			+ FixPrivateMethodAccessMethodVisitor.stripPrivate(method.name()));
+	        return Type.fromCommon(codegenName(String.valueOf(id), method));
+	}
+
+	/** Nome usado para os Callables criados pelo IndySpawnHelper, que não têm id nem classe própria **/
+	public static String indyCodegenName(InvokedMethod method) {
+		return codegenName("indy", method);
+	}
+
+	private static String codegenName(String id, InvokedMethod method) {
+		return CODEGEN_CLASS_PREFIX + id + "$" + method.owner().commonName().replace('.', '_') + "."
+			+ FixPrivateMethodAccessMethodVisitor.stripPrivate(method.name());
 	}
 
 	/** Devolve id interno do codegen. Usar apenas para debugging **/
@@ -214,6 +222,33 @@ public final class CodegenHelper {
 		mv.visitEnd();
 		}
 
+		// Criar métodos call_primitive e primitiveResult, que evitam o boxing do resultado
+		if (Options.PRIMITIVEFUTURES && method.returnType().isPrimitive()) {
+		{
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "call_primitive", "()J", null, null);
+		mv.visitCode();
+		int fieldPos = 0;
+		for (Type t : arguments) {
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, codegenType.asmName(), "arg" + fieldPos++, t.bytecodeName());
+		}
+		mv.visitMethodInsn(method.opcode() == INVOKESPECIAL ? INVOKEVIRTUAL : method.opcode(),
+			method.owner().asmName(), method.name(), method.desc());
+		primitiveWrap(method.returnType(), mv);
+		mv.visitInsn(LRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		}
+		{
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "primitiveResult", "()Z", null, null);
+		mv.visitCode();
+		mv.visitInsn(ICONST_1);
+		mv.visitInsn(IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		}
+		}
+
 		if (singletonMode) {
 		// Criar field com singleton
 		cw.visitField(ACC_STATIC | ACC_FINAL | ACC_PUBLIC, "INSTANCE", codegenType.bytecodeName(), null, null);
@@ -315,6 +350,15 @@ public final class CodegenHelper {
 		mv.visitEnd();
 		}
 
+		if (Options.ADAPTIVESPAWN) {
+			MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "spawnSiteId", "()I", null, null);
+			mv.visitCode();
+			mv.visitLdcInsn(id);
+			mv.visitInsn(IRETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
 		if (Options.ALLOWDUMMYTX && SpeculationSkiplist.useDummyTransaction(method)) {
 			Log.info("Setting isDummy transaction flag for " + method.owner().commonName() + "." + method.name());
 
@@ -347,6 +391,36 @@ public final class CodegenHelper {
 		return newClass;
 	}
 
+	/** Codifica o valor primitivo no topo da stack num long (ver PrimitiveFuture) **/
+	public static void primitiveWrap(Type type, MethodVisitor mv) {
+		if (type.equals(Type.PRIM_VOID)) {
+			mv.visitInsn(LCONST_0);
+		} else if (type.equals(Type.PRIM_LONG)) {
+			// Nada a fazer
+		} else if (type.equals(Type.PRIM_DOUBLE)) {
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J");
+		} else if (type.equals(Type.PRIM_FLOAT)) {
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I");
+			mv.visitInsn(I2L);
+		} else {
+			mv.visitInsn(I2L);
+		}
+	}
+
+	/** Operação inversa do primitiveWrap **/
+	public static void primitiveUnwrap(Type type, MethodVisitor mv) {
+		if (type.equals(Type.PRIM_LONG)) {
+			// Nada a fazer
+		} else if (type.equals(Type.PRIM_DOUBLE)) {
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D");
+		} else if (type.equals(Type.PRIM_FLOAT)) {
+			mv.visitInsn(L2I);
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F");
+		} else {
+			mv.visitInsn(L2I);
+		}
+	}
+
 	public static void boxWrap(Type argumentType, MethodVisitor mv) {
 		mv.visitMethodInsn(INVOKESTATIC, argumentType.toObject().asmName(), "valueOf",
 				"(" + argumentType.bytecodeName() + ")" + argumentType.toObject().bytecodeName());
@@ -0,0 +1,266 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.speculation.runtime;
+
+import java.lang.invoke.*;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jaspex.Options;
+
+/** Alternativa ao CodegenHelper, usada com -indyspawn.
+  *
+  * Em vez de se gerar uma classe Codegen para cada método invocado especulativamente, o
+  * InsertContinuationSpeculationMethodVisitor emite um call site invokedynamic com o mesmo tipo que o
+  * newInstance() da classe Codegen, que recebe como argumento de bootstrap um MethodHandle para o método.
+  * O call site devolve IndyCallables, que guardam os argumentos capturados e invocam o método através do
+  * MethodHandle. Todas as adaptações do MethodHandle (spread dos argumentos, boxing ou codificação do
+  * resultado) são feitas apenas uma vez, no bootstrap.
+  *
+  * Com -tieredspawn, cada método $speculative que contém spawn sites começa por um segundo call site
+  * invokedynamic (ver TieredSpawnGuardMethodVisitor), que indica se o método deve passar a delegar na sua
+  * versão $non_speculative. Inicialmente está ligado a false; quando o SpawnSiteController desiste de todos os
+  * spawn sites do método que já foram executados, o call site é religado a true, e o método deixa de pagar o
+  * custo da especulação (captura de continuações, Futures e chamadas ao spawnSpeculation).
+  **/
+public final class IndySpawnHelper {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+
+	// Ids dos call sites, usados pelo -adaptivespawn
+	private static final AtomicInteger _nextSiteId = new AtomicInteger();
+
+	// Métodos com spawn sites, usados pelo -tieredspawn (a chave é "classe.nome+desc")
+	private static final ConcurrentHashMap<String, MethodTier> _methods =
+		new ConcurrentHashMap<String, MethodTier>();
+	// Método que contém cada spawn site, usado pelo -tieredspawn
+	private static final ConcurrentHashMap<Integer, MethodTier> _siteMethods =
+		new ConcurrentHashMap<Integer, MethodTier>();
+	private static final AtomicInteger _tieredDownMethods = new AtomicInteger();
+
+	private static final MethodHandle NEW_CALLABLE;
+	private static final MethodHandle FLOAT_TO_BITS;
+	private static final MethodHandle DOUBLE_TO_BITS;
+
+	static {
+		try {
+			NEW_CALLABLE = LOOKUP.findStatic(IndySpawnHelper.class, "newCallable",
+				MethodType.methodType(Callable.class, SpawnSite.class, Object[].class));
+			FLOAT_TO_BITS = LOOKUP.findStatic(Float.class, "floatToRawIntBits",
+				MethodType.methodType(int.class, float.class));
+			DOUBLE_TO_BITS = LOOKUP.findStatic(Double.class, "doubleToRawLongBits",
+				MethodType.methodType(long.class, double.class));
+		} catch (NoSuchMethodException e) {
+			throw new Error(e);
+		} catch (IllegalAccessException e) {
+			throw new Error(e);
+		}
+	}
+
+	/** Informação partilhada por todos os Callables criados num call site **/
+	private static final class SpawnSite {
+		// Invocação do método alvo: (Object[])Object
+		final MethodHandle _call;
+		// Invocação com resultado codificado num long, usada com -primitivefutures: (Object[])J, ou null
+		final MethodHandle _callPrimitive;
+		final String _name;
+		final boolean _useDummyTx;
+		final int _siteId = _nextSiteId.getAndIncrement();
+
+		SpawnSite(MethodHandle target, String name, boolean useDummyTx) {
+			int arguments = target.type().parameterCount();
+			_call = target.asSpreader(Object[].class, arguments)
+				.asType(MethodType.methodType(Object.class, Object[].class));
+			_callPrimitive = (Options.PRIMITIVEFUTURES && target.type().returnType().isPrimitive()) ?
+				primitiveWrap(target).asSpreader(Object[].class, arguments) : null;
+			_name = name;
+			_useDummyTx = useDummyTx;
+		}
+	}
+
+	/** Call site do teste à entrada de um método $speculative, usado pelo -tieredspawn **/
+	private static final class MethodTier extends MutableCallSite {
+		// Número de spawn sites do método já executados e que o SpawnSiteController ainda não abandonou;
+		// protegido pelo lock do MethodTier
+		private int _liveSites;
+		private boolean _tieredDown;
+
+		MethodTier() {
+			super(MethodHandles.constant(boolean.class, false));
+		}
+
+		synchronized void siteLinked() {
+			_liveSites++;
+		}
+
+		synchronized void siteUnprofitable() {
+			if (_tieredDown || --_liveSites > 0) return;
+			_tieredDown = true;
+			setTarget(MethodHandles.constant(boolean.class, true));
+			MutableCallSite.syncAll(new MutableCallSite[] { this });
+			_tieredDownMethods.incrementAndGet();
+		}
+	}
+
+	/** Callable criado pelos call sites; equivalente a uma instância de uma classe Codegen **/
+	private static final class IndyCallable extends Callable {
+		private final SpawnSite _site;
+		private final Object[] _arguments;
+
+		IndyCallable(SpawnSite site, Object[] arguments) {
+			_site = site;
+			_arguments = arguments;
+		}
+
+		@Override
+		public Object call() {
+			try {
+				return _site._call.invokeExact(_arguments);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public long call_primitive() {
+			try {
+				return (long) _site._callPrimitive.invokeExact(_arguments);
+			} catch (Throwable t) {
+				throw rethrow(t);
+			}
+		}
+
+		@Override
+		public Object call_nonspeculative() {
+			throw new Error("Not Implemented");
+		}
+
+		@Override
+		public boolean primitiveResult() {
+			return _site._callPrimitive != null;
+		}
+
+		@Override
+		public boolean useDummyTransaction() {
+			return _site._useDummyTx;
+		}
+
+		@Override
+		public int spawnSiteId() {
+			return _site._siteId;
+		}
+
+		@Override
+		public String name() {
+			return _site._name;
+		}
+
+		@Override
+		public String toString() {
+			return _site._name + Arrays.toString(_arguments);
+		}
+	}
+
+	private IndySpawnHelper() { }
+
+	/** Bootstrap dos call sites. O tipo do call site é o tipo do newInstance() da classe Codegen
+	  * equivalente (receiver, se existir, seguido dos argumentos do método), e target é o método a invocar.
+	  * codegenName contém o nome no formato das classes Codegen, usado nas estatísticas, e callerMethod o
+	  * nome+desc do método $speculative onde o call site se encontra.
+	  **/
+	public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type,
+		MethodHandle target, String codegenName, int useDummyTx, String callerMethod) {
+		SpawnSite site = new SpawnSite(target, codegenName, useDummyTx != 0);
+
+		if (Options.TIEREDSPAWN) {
+			MethodTier tier = methodTier(caller.lookupClass(), callerMethod);
+			tier.siteLinked();
+			_siteMethods.put(site._siteId, tier);
+		}
+
+		if (type.parameterCount() == 0) {
+			// Tal como no CodegenHelper, métodos static sem argumentos usam sempre o mesmo Callable
+			return new ConstantCallSite(
+				MethodHandles.constant(Callable.class, new IndyCallable(site, NO_ARGUMENTS)).asType(type));
+		}
+
+		return new ConstantCallSite(NEW_CALLABLE.bindTo(site)
+			.asCollector(Object[].class, type.parameterCount()).asType(type));
+	}
+
+	/** Bootstrap do teste inserido pelo TieredSpawnGuardMethodVisitor à entrada do método method
+	  * (nome+desc) da classe que faz o lookup. O tipo do call site é ()Z.
+	  **/
+	public static CallSite bootstrapTierGuard(MethodHandles.Lookup caller, String name, MethodType type,
+		String method) {
+		return methodTier(caller.lookupClass(), method);
+	}
+
+	/** Chamado pelo SpawnSiteController quando desiste de um spawn site **/
+	public static void siteUnprofitable(int siteId) {
+		MethodTier tier = _siteMethods.get(siteId);
+		if (tier != null) tier.siteUnprofitable();
+	}
+
+	/** Número de métodos que passaram a usar a versão $non_speculative, para as estatísticas **/
+	public static int tieredDownMethods() {
+		return _tieredDownMethods.get();
+	}
+
+	private static MethodTier methodTier(Class<?> owner, String method) {
+		String key = owner.getName() + '.' + method;
+		MethodTier tier = _methods.get(key);
+		if (tier == null) {
+			MethodTier newTier = new MethodTier();
+			tier = _methods.putIfAbsent(key, newTier);
+			if (tier == null) tier = newTier;
+		}
+		return tier;
+	}
+
+	@SuppressWarnings("unused")
+	private static Callable newCallable(SpawnSite site, Object[] arguments) {
+		return new IndyCallable(site, arguments);
+	}
+
+	/** Versão do CodegenHelper.primitiveWrap para MethodHandles **/
+	private static MethodHandle primitiveWrap(MethodHandle target) {
+		Class<?> returnType = target.type().returnType();
+		if (returnType == float.class) {
+			target = MethodHandles.filterReturnValue(target, FLOAT_TO_BITS);
+		} else if (returnType == double.class) {
+			target = MethodHandles.filterReturnValue(target, DOUBLE_TO_BITS);
+		}
+		// Restantes conversões (incluindo void -> 0 e boolean -> 0/1) são feitas pelo explicitCastArguments
+		return MethodHandles.explicitCastArguments(target, target.type().changeReturnType(long.class));
+	}
+
+	/** Relança excepções vindas do método alvo, sem as alterar **/
+	private static Error rethrow(Throwable t) {
+		jaspex.util.Unsafe.UNSAFE.throwException(t);
+		throw new AssertionError("Should never happen");
+	}
+
+}
@@ -0,0 +1,361 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.stm;
+
+import static jaspex.util.Unsafe.UNSAFE;
+import static jaspex.stm.FieldAccess.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/** Storage shared by ReadLog and WriteSet: a dense list of (instance, offset, value) entries, kept in
+  * parallel arrays. Primitive values are stored as raw bits in _values, and object values (and futures)
+  * in _references.
+  *
+  * Accesses to consecutive elements of an array are coalesced: when an array element entry is followed
+  * by an access to the next element, it is turned into a range entry, whose _references slot holds an
+  * ArrayRange with the values of all elements in the range (and whose offset is that of its first element).
+  **/
+abstract class AccessLog {
+
+	// Entry types (same order as FieldAccess.Type)
+	static final byte OBJECT  = 0;
+	static final byte BOOLEAN = 1;
+	static final byte BYTE    = 2;
+	static final byte CHAR    = 3;
+	static final byte DOUBLE  = 4;
+	static final byte FLOAT   = 5;
+	static final byte INT     = 6;
+	static final byte LONG    = 7;
+	static final byte SHORT   = 8;
+	// Flag added to the type of entries whose value is still a Future (write-set only)
+	static final byte FUTURE  = 0x10;
+	// Flag added to the type of range entries
+	static final byte RANGE   = 0x20;
+
+	// Array layout for each entry type
+	private static final int[] ARRAY_BASE = { OBJECT_ARRAY_BASE, BOOLEAN_ARRAY_BASE, BYTE_ARRAY_BASE,
+		CHAR_ARRAY_BASE, DOUBLE_ARRAY_BASE, FLOAT_ARRAY_BASE, INT_ARRAY_BASE, LONG_ARRAY_BASE, SHORT_ARRAY_BASE };
+	private static final int[] ARRAY_SHIFT = { OBJECT_ARRAY_SHIFT, BOOLEAN_ARRAY_SHIFT, BYTE_ARRAY_SHIFT,
+		CHAR_ARRAY_SHIFT, DOUBLE_ARRAY_SHIFT, FLOAT_ARRAY_SHIFT, INT_ARRAY_SHIFT, LONG_ARRAY_SHIFT, SHORT_ARRAY_SHIFT };
+
+	// Number of recent array element entries that are candidates to be extended into ranges
+	// (must be a power of two)
+	private static final int OPEN_ENTRIES = 4;
+
+	// Logs that grew past this size are not recycled, so that a single huge transaction does not
+	// pin a lot of memory to a worker thread for the rest of the run
+	private static final int MAX_RECYCLED_CAPACITY = 1 << 16;
+
+	Object[] _instances;
+	long[] _offsets;
+	byte[] _types;
+	long[] _values;
+	Object[] _references;
+	int _size;
+
+	// Positions (+ 1) of the open entries, replaced in round-robin order
+	private final int[] _openEntries = new int[OPEN_ENTRIES];
+	private int _nextOpenEntry;
+
+	AccessLog(int capacity) {
+		_instances = new Object[capacity];
+		_offsets = new long[capacity];
+		_types = new byte[capacity];
+		_values = new long[capacity];
+		_references = new Object[capacity];
+	}
+
+	private void grow() {
+		int capacity = _instances.length * 2;
+		_instances = Arrays.copyOf(_instances, capacity);
+		_offsets = Arrays.copyOf(_offsets, capacity);
+		_types = Arrays.copyOf(_types, capacity);
+		_values = Arrays.copyOf(_values, capacity);
+		_references = Arrays.copyOf(_references, capacity);
+	}
+
+	/** Hash of a (instance, offset) pair, for the logs that need to index their entries **/
+	static int hash(Object instance, long offset) {
+		int h = System.identityHashCode(instance) * 0x9E3779B9 + (int) offset;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	/** Returns the entry type for the elements of array, or -1 if it is not an array **/
+	static byte arrayType(Object array) {
+		if (array instanceof  Object[]) return OBJECT;
+		if (array instanceof boolean[]) return BOOLEAN;
+		if (array instanceof    byte[]) return BYTE;
+		if (array instanceof    char[]) return CHAR;
+		if (array instanceof  double[]) return DOUBLE;
+		if (array instanceof   float[]) return FLOAT;
+		if (array instanceof     int[]) return INT;
+		if (array instanceof    long[]) return LONG;
+		if (array instanceof   short[]) return SHORT;
+		return -1;
+	}
+
+	static long elementOffset(byte type, int index) {
+		return positionOffset(ARRAY_BASE[type], ARRAY_SHIFT[type], index);
+	}
+
+	/** Reads the raw bits of a primitive value of the given type **/
+	static long getBits(Object instance, long offset, byte type) {
+		switch (type) {
+			case BOOLEAN: return UNSAFE.getBoolean(instance, offset) ? 1 : 0;
+			case    BYTE: return UNSAFE.getByte(instance, offset);
+			case    CHAR: return UNSAFE.getChar(instance, offset);
+			case  DOUBLE: return Double.doubleToRawLongBits(UNSAFE.getDouble(instance, offset));
+			case   FLOAT: return Float.floatToRawIntBits(UNSAFE.getFloat(instance, offset));
+			case     INT: return UNSAFE.getInt(instance, offset);
+			case    LONG: return UNSAFE.getLong(instance, offset);
+			case   SHORT: return UNSAFE.getShort(instance, offset);
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	/** Writes a primitive value of the given type, from its raw bits **/
+	static void putBits(Object instance, long offset, byte type, long value) {
+		switch (type) {
+			case BOOLEAN: UNSAFE.putBoolean(instance, offset, value != 0); return;
+			case    BYTE: UNSAFE.putByte(instance, offset, (byte) value); return;
+			case    CHAR: UNSAFE.putChar(instance, offset, (char) value); return;
+			case  DOUBLE: UNSAFE.putDouble(instance, offset, Double.longBitsToDouble(value)); return;
+			case   FLOAT: UNSAFE.putFloat(instance, offset, Float.intBitsToFloat((int) value)); return;
+			case     INT: UNSAFE.putInt(instance, offset, (int) value); return;
+			case    LONG: UNSAFE.putLong(instance, offset, value); return;
+			case   SHORT: UNSAFE.putShort(instance, offset, (short) value); return;
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	final int append(Object instance, long offset, byte type) {
+		int pos = _size;
+		if (pos == _instances.length) grow();
+		_instances[pos] = instance;
+		_offsets[pos] = offset;
+		_types[pos] = type;
+		_size = pos + 1;
+		return pos;
+	}
+
+	final int size() {
+		return _size;
+	}
+
+	final boolean isEmpty() {
+		return _size == 0;
+	}
+
+	final boolean isRange(int i) {
+		return (_types[i] & RANGE) != 0;
+	}
+
+	final ArrayRange range(int i) {
+		return (ArrayRange) _references[i];
+	}
+
+	/** Marks entry pos, for an array element, as a candidate to be extended into a range **/
+	final void openEntry(int pos) {
+		_openEntries[_nextOpenEntry] = pos + 1;
+		_nextOpenEntry = (_nextOpenEntry + 1) & (OPEN_ENTRIES - 1);
+	}
+
+	/** Returns an open entry for array that ends just before index (and so can be extended to include
+	  * it), or -1 if there is none
+	  **/
+	final int openEntryEndingAt(Object array, byte type, int index) {
+		for (int k = 0; k < OPEN_ENTRIES; k++) {
+			int pos = _openEntries[k] - 1;
+			if (pos < 0 || _instances[pos] != array) continue;
+			if (isRange(pos)) {
+				if (range(pos).end() == index) return pos;
+			} else if (_types[pos] == type && _offsets[pos] == elementOffset(type, index - 1)) {
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	/** Extends entry pos (returned by openEntryEndingAt()) with the element at index, turning it into a
+	  * range entry if needed
+	  **/
+	final void extendRange(int pos, int index, long bits, Object reference) {
+		ArrayRange range;
+		if (isRange(pos)) {
+			range = range(pos);
+		} else {
+			byte type = _types[pos];
+			range = new ArrayRange(type, index - 1);
+			range.append(_values[pos], _references[pos]);
+			_types[pos] = (byte) (type | RANGE);
+			_references[pos] = range;
+			rangeCreated(pos, range);
+		}
+		range.append(bits, reference);
+	}
+
+	/** Used by -checkpoints: stops the current entries from being extended by later accesses **/
+	void seal() {
+		Arrays.fill(_openEntries, 0);
+	}
+
+	/** Used by -checkpoints: drops every entry after the first size entries. Only used right before the
+	  * transaction is committed, so the subclasses' indexes are left stale.
+	  **/
+	final void truncate(int size) {
+		Arrays.fill(_instances, size, _size, null);
+		Arrays.fill(_references, size, _size, null);
+		Arrays.fill(_openEntries, 0);
+		_size = size;
+	}
+
+	/** Hook called when entry pos is turned into a range entry **/
+	void rangeCreated(int pos, ArrayRange range) { }
+
+	/** Checks if the value in entry i still matches the one in memory.
+	  * Uses the same comparisons as the corresponding FieldAccess.validate().
+	  **/
+	final boolean matchesMemory(int i) {
+		if (isRange(i)) return range(i).matches(_instances[i]);
+		Object instance = _instances[i];
+		long offset = _offsets[i];
+		long value = _values[i];
+		switch (_types[i]) {
+			case  OBJECT: return _references[i] == UNSAFE.getObject(instance, offset);
+			case BOOLEAN: return (value != 0) == UNSAFE.getBoolean(instance, offset);
+			case    BYTE: return (byte) value == UNSAFE.getByte(instance, offset);
+			case    CHAR: return (char) value == UNSAFE.getChar(instance, offset);
+			case  DOUBLE: return Double.longBitsToDouble(value) == UNSAFE.getDouble(instance, offset);
+			case   FLOAT: return Float.intBitsToFloat((int) value) == UNSAFE.getFloat(instance, offset);
+			case     INT: return (int) value == UNSAFE.getInt(instance, offset);
+			case    LONG: return value == UNSAFE.getLong(instance, offset);
+			case   SHORT: return (short) value == UNSAFE.getShort(instance, offset);
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	/** Writes the value in entry i to memory **/
+	final void storeToMemory(int i) {
+		if (isRange(i)) {
+			range(i).copyTo(_instances[i]);
+			return;
+		}
+		Object instance = _instances[i];
+		long offset = _offsets[i];
+		long value = _values[i];
+		switch (_types[i]) {
+			case  OBJECT: UNSAFE.putObject(instance, offset, _references[i]); return;
+			case BOOLEAN: UNSAFE.putBoolean(instance, offset, value != 0); return;
+			case    BYTE: UNSAFE.putByte(instance, offset, (byte) value); return;
+			case    CHAR: UNSAFE.putChar(instance, offset, (char) value); return;
+			case  DOUBLE: UNSAFE.putDouble(instance, offset, Double.longBitsToDouble(value)); return;
+			case   FLOAT: UNSAFE.putFloat(instance, offset, Float.intBitsToFloat((int) value)); return;
+			case     INT: UNSAFE.putInt(instance, offset, (int) value); return;
+			case    LONG: UNSAFE.putLong(instance, offset, value); return;
+			case   SHORT: UNSAFE.putShort(instance, offset, (short) value); return;
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	/** Replaces the Future in entry i with the value it yields **/
+	final void resolveFuture(int i) {
+		byte type = (byte) (_types[i] & ~FUTURE);
+		Object value;
+		try {
+			value = ((Future<?>) _references[i]).get();
+		} catch (ExecutionException e)   { throw new Error(e); }
+		  catch (InterruptedException e) { throw new Error(e); }
+
+		_references[i] = null;
+		switch (type) {
+			case  OBJECT: _references[i] = value; break;
+			case BOOLEAN: _values[i] = ((Boolean) value) ? 1 : 0; break;
+			case    BYTE: _values[i] = (Byte) value; break;
+			case    CHAR: _values[i] = (Character) value; break;
+			case  DOUBLE: _values[i] = Double.doubleToRawLongBits((Double) value); break;
+			case   FLOAT: _values[i] = Float.floatToRawIntBits((Float) value); break;
+			case     INT: _values[i] = (Integer) value; break;
+			case    LONG: _values[i] = (Long) value; break;
+			case   SHORT: _values[i] = (Short) value; break;
+			default: throw new AssertionError("Should never happen");
+		}
+		_types[i] = type;
+	}
+
+	/** Creates a FieldAccess for a single location. Used only for debugging/statistics. **/
+	private static FieldAccess toFieldAccess(Object instance, long offset, byte type, long value, Object reference) {
+		if ((type & FUTURE) != 0) {
+			return new FutureFieldAccess(instance, offset, (Future<?>) reference,
+				FieldAccess.Type.values()[type & ~FUTURE]);
+		}
+		switch (type) {
+			case  OBJECT: return new  ObjectFieldAccess(instance, offset, reference);
+			case BOOLEAN: return new BooleanFieldAccess(instance, offset, value != 0);
+			case    BYTE: return new    ByteFieldAccess(instance, offset, (byte) value);
+			case    CHAR: return new    CharFieldAccess(instance, offset, (char) value);
+			case  DOUBLE: return new  DoubleFieldAccess(instance, offset, Double.longBitsToDouble(value));
+			case   FLOAT: return new   FloatFieldAccess(instance, offset, Float.intBitsToFloat((int) value));
+			case     INT: return new     IntFieldAccess(instance, offset, (int) value);
+			case    LONG: return new    LongFieldAccess(instance, offset, value);
+			case   SHORT: return new   ShortFieldAccess(instance, offset, (short) value);
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	/** Returns the log contents as FieldAccesses. Used only for debugging/statistics. **/
+	final List<FieldAccess> entries() {
+		List<FieldAccess> entries = new ArrayList<FieldAccess>(_size);
+		for (int i = 0; i < _size; i++) {
+			if (isRange(i)) {
+				// Ranges are expanded into one FieldAccess per element
+				ArrayRange range = range(i);
+				byte type = range._type;
+				for (int index = range._from; index < range.end(); index++) {
+					entries.add(toFieldAccess(_instances[i], elementOffset(type, index), type,
+						type == OBJECT ? 0 : range.bits(index), type == OBJECT ? range.reference(index) : null));
+				}
+			} else {
+				entries.add(toFieldAccess(_instances[i], _offsets[i], _types[i], _values[i], _references[i]));
+			}
+		}
+		return entries;
+	}
+
+	/** Empties the log, so that it can be reused by another transaction.
+	  * Returns false if the log is too big to be worth keeping around.
+	  **/
+	boolean recycle() {
+		if (_instances.length > MAX_RECYCLED_CAPACITY) return false;
+		// Drop references, so that we don't keep objects alive
+		Arrays.fill(_instances, 0, _size, null);
+		Arrays.fill(_references, 0, _size, null);
+		Arrays.fill(_openEntries, 0);
+		_size = 0;
+		return true;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+import static jaspex.stm.AccessLog.*;
+
+/** A range of consecutive elements of an array, [_from, _from + _count), together with their values.
+  *
+  * Values are kept in _buffer, which is an array of the same primitive type as the target array (or
+  * an Object[]), so that a read range can be validated by comparing it directly with the array, and
+  * a write range can be written back with a single System.arraycopy.
+  **/
+final class ArrayRange {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	final byte _type;
+	final int _from;
+	int _count;
+	Object _buffer;
+	private int _capacity;
+	// Used only by the WriteSet: position of the previous range entry for the same array, or -1
+	int _previous = -1;
+
+	ArrayRange(byte type, int from) {
+		_type = type;
+		_from = from;
+		_capacity = INITIAL_CAPACITY;
+		_buffer = newBuffer(type, INITIAL_CAPACITY);
+	}
+
+	/** Creates a range of count elements starting at from, with the values copied from
+	  * values[valuesFrom, valuesFrom + count)
+	  **/
+	ArrayRange(byte type, int from, Object values, int valuesFrom, int count) {
+		_type = type;
+		_from = from;
+		_count = count;
+		_capacity = Math.max(count, INITIAL_CAPACITY);
+		_buffer = newBuffer(type, _capacity);
+		System.arraycopy(values, valuesFrom, _buffer, 0, count);
+	}
+
+	private static Object newBuffer(byte type, int capacity) {
+		switch (type) {
+			case  OBJECT: return new  Object[capacity];
+			case BOOLEAN: return new boolean[capacity];
+			case    BYTE: return new    byte[capacity];
+			case    CHAR: return new    char[capacity];
+			case  DOUBLE: return new  double[capacity];
+			case   FLOAT: return new   float[capacity];
+			case     INT: return new     int[capacity];
+			case    LONG: return new    long[capacity];
+			case   SHORT: return new   short[capacity];
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	int end() {
+		return _from + _count;
+	}
+
+	boolean contains(int index) {
+		return (index >= _from) && (index < _from + _count);
+	}
+
+	/** Adds the element following the current end of the range **/
+	void append(long bits, Object reference) {
+		if (_count == _capacity) {
+			_capacity *= 2;
+			Object buffer = newBuffer(_type, _capacity);
+			System.arraycopy(_buffer, 0, buffer, 0, _count);
+			_buffer = buffer;
+		}
+		set(_from + _count++, bits, reference);
+	}
+
+	// Element accessors, using the same raw representation as AccessLog._values
+	void set(int index, long bits, Object reference) {
+		if (_type == OBJECT) ((Object[]) _buffer)[index - _from] = reference;
+		else putBits(_buffer, elementOffset(_type, index - _from), _type, bits);
+	}
+
+	long bits(int index) {
+		return getBits(_buffer, elementOffset(_type, index - _from), _type);
+	}
+
+	Object reference(int index) {
+		return ((Object[]) _buffer)[index - _from];
+	}
+
+	/** Bulk comparison of the range with the current contents of array.
+	  * Uses the same comparisons as the corresponding FieldAccess.validate().
+	  **/
+	boolean matches(Object array) {
+		int from = _from;
+		int count = _count;
+		switch (_type) {
+			case OBJECT: {
+				Object[] a = (Object[]) array; Object[] b = (Object[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case BOOLEAN: {
+				boolean[] a = (boolean[]) array; boolean[] b = (boolean[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case BYTE: {
+				byte[] a = (byte[]) array; byte[] b = (byte[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case CHAR: {
+				char[] a = (char[]) array; char[] b = (char[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case DOUBLE: {
+				double[] a = (double[]) array; double[] b = (double[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case FLOAT: {
+				float[] a = (float[]) array; float[] b = (float[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case INT: {
+				int[] a = (int[]) array; int[] b = (int[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case LONG: {
+				long[] a = (long[]) array; long[] b = (long[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+			case SHORT: {
+				short[] a = (short[]) array; short[] b = (short[]) _buffer;
+				for (int i = 0; i < count; i++) if (b[i] != a[from + i]) return false;
+				return true;
+			}
+		}
+		throw new AssertionError("Should never happen");
+	}
+
+	/** Bulk writeback of the range to array **/
+	void copyTo(Object array) {
+		System.arraycopy(_buffer, 0, array, _from, _count);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.stm;
+
+import java.lang.invoke.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Bootstrap and global switch for the invokedynamic read barriers emitted with -indybarriers.
+  *
+  * When no (non-dummy) transaction is live, every read barrier would just return the value that was
+  * read directly from memory, so each call site is linked to that direct access, guarded by a
+  * SwitchPoint. The SwitchPoint is invalidated when the first transaction starts, which relinks every
+  * site to the corresponding Transaction.load* method, and a new one is installed once the last live
+  * transaction finishes.
+  *
+  * Invalidating a SwitchPoint deoptimizes every method that inlined one of its sites, so if sequential
+  * phases keep being cut short by new transactions, re-arming is postponed for an increasing number
+  * of drains.
+  **/
+public final class BarrierSwitch {
+
+	/** Sites that stayed armed for less than this were not worth the cost of re-arming them **/
+	private static final long MIN_ARMED_NANOS = 10 * 1000 * 1000;
+	private static final int MAX_SKIPPED_DRAINS = 1 << 16;
+
+	/** Call site with the two targets it switches between **/
+	private static final class BarrierCallSite extends MutableCallSite {
+		final MethodHandle _direct;
+		final MethodHandle _barrier;
+
+		BarrierCallSite(MethodHandle direct, MethodHandle barrier) {
+			super(barrier.type());
+			_direct = direct;
+			_barrier = barrier;
+		}
+
+		void link(SwitchPoint switchPoint) {
+			setTarget(switchPoint.guardWithTest(_direct, _barrier));
+		}
+	}
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	// Number of live transactions
+	private static final AtomicInteger _live = new AtomicInteger();
+	// Set (before checking _live) while re-arming, so that a transaction starting concurrently always
+	// goes through disarm(), which then waits for the re-arm to finish
+	private static volatile boolean _armed = true;
+
+	// The fields below are protected by the class lock
+	private static SwitchPoint _switchPoint = new SwitchPoint();
+	private static final List<BarrierCallSite> _sites = new ArrayList<BarrierCallSite>();
+	private static long _armedAt = System.nanoTime();
+	private static int _skipDrains;
+	private static int _drainsToSkip;
+
+	private BarrierSwitch() { }
+
+	/** Bootstrap method for the barrier call sites. The name of the site is the name of the Transaction
+	  * method that implements the barrier, and its type is the type of that method.
+	  **/
+	public static CallSite bootstrap(MethodHandles.Lookup caller, String name, MethodType type) {
+		try {
+			MethodHandle barrier = LOOKUP.findStatic(Transaction.class, name, type);
+			BarrierCallSite site = new BarrierCallSite(direct(name, type), barrier);
+			synchronized (BarrierSwitch.class) {
+				site.link(_switchPoint);
+				_sites.add(site);
+			}
+			return site;
+		} catch (NoSuchMethodException e) {
+			throw new Error(e);
+		} catch (IllegalAccessException e) {
+			throw new Error(e);
+		}
+	}
+
+	/** Returns the direct access for barrier name: array barriers read the element, and field barriers
+	  * return the value (their second argument) that the caller already read
+	  **/
+	private static MethodHandle direct(String name, MethodType type) {
+		if (name.startsWith("arrayLoad")) {
+			return MethodHandles.arrayElementGetter(type.parameterType(0)).asType(type);
+		}
+		MethodHandle identity = MethodHandles.identity(type.returnType());
+		identity = MethodHandles.dropArguments(identity, 0, type.parameterType(0));
+		return MethodHandles.dropArguments(identity, 2, type.parameterList().subList(2, type.parameterCount()));
+	}
+
+	/** Called by every transaction before it runs any barrier **/
+	static void transactionStarted() {
+		_live.incrementAndGet();
+		if (_armed) disarm();
+	}
+
+	/** Called once a transaction is committed or aborted **/
+	static void transactionFinished() {
+		if (_live.decrementAndGet() == 0) rearm();
+	}
+
+	private static synchronized void disarm() {
+		if (!_armed) return;
+		// _armed may only be cleared once every site has been relinked to its barrier: a transaction that
+		// sees it false skips disarm() and starts running its barriers right away
+		SwitchPoint.invalidateAll(new SwitchPoint[] { _switchPoint });
+		_armed = false;
+
+		if (System.nanoTime() - _armedAt < MIN_ARMED_NANOS) {
+			_drainsToSkip = Math.min(MAX_SKIPPED_DRAINS, Math.max(1, _drainsToSkip * 2));
+		} else {
+			_drainsToSkip = 0;
+		}
+		_skipDrains = _drainsToSkip;
+	}
+
+	private static synchronized void rearm() {
+		if (_armed) return;
+		if (_skipDrains > 0) {
+			_skipDrains--;
+			return;
+		}
+
+		_armed = true;
+		if (_live.get() != 0) {
+			_armed = false;
+			return;
+		}
+
+		_switchPoint = new SwitchPoint();
+		for (BarrierCallSite site : _sites) site.link(_switchPoint);
+		_armedAt = System.nanoTime();
+	}
+}
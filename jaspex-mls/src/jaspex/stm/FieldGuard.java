@@ -0,0 +1,63 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+/** Guards for the fields that the transactifier treats as effectively final (-effectivelyfinal).
+  *
+  * Reads of those fields skip the read-set, which is only correct while no code writes them outside of
+  * their initialization. If a class loaded later turns out to write one, its guard is set and its reads
+  * go through the normal barriers from then on. The epoch is bumped on every invalidation, and
+  * transactions that started in an earlier epoch fail validation, as they may have read stale values
+  * without logging them.
+  *
+  * Fields are mapped to guards by hashing, so that the mapping stays the same across runs (classes may
+  * come from the -classcache); a collision only means that a field falls back to the barriers too.
+  **/
+public final class FieldGuard {
+
+	private static final int GUARDS = 1 << 10;
+
+	private static final boolean[] _mutable = new boolean[GUARDS];
+	private static volatile int _epoch;
+
+	private FieldGuard() { }
+
+	/** Returns the guard for field name of class owner (in asm format) **/
+	public static int guard(String owner, String name) {
+		return (owner + "." + name).hashCode() & (GUARDS - 1);
+	}
+
+	static boolean isMutable(int guard) {
+		return _mutable[guard];
+	}
+
+	static int epoch() {
+		return _epoch;
+	}
+
+	public static synchronized void invalidate(int guard) {
+		if (_mutable[guard]) return;
+		_mutable[guard] = true;
+		// Volatile write, which publishes the guard to transactions that start after this point
+		_epoch++;
+	}
+}
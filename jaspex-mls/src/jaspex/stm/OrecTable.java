@@ -0,0 +1,95 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+import static jaspex.util.Unsafe.UNSAFE;
+
+/** Table of ownership-record versions, used by -orecs.
+  *
+  * Every (instance, offset) pair hashes to a stripe holding the version of its last write. Versions come
+  * from a global clock that only the thread in program order advances (once per commit), and every
+  * store done in program order (either directly, or during a writeback) stamps its stripe with the
+  * current clock value, after the store itself.
+  *
+  * A read logs the version of its stripe, as long as that version is older than the clock (a version
+  * equal to the clock may still be stamped again by a later write in the same epoch, and so is not
+  * trusted). Any write done after the read stamps the stripe with a newer version, so a read whose
+  * stripe still has the logged version is known to be valid without looking at memory; if the version
+  * changed (which may be due to another location in the same stripe), the value is checked as usual.
+  *
+  * Only writes that go through the STM barriers (or System.arraycopy) are tracked: memory changed
+  * by native code is not noticed, which is why -orecs is an experimental option.
+  **/
+final class OrecTable {
+
+	// Logged for reads whose version cannot be trusted
+	static final long UNKNOWN = -1;
+
+	private static final int STRIPES = 1 << 16;
+	private static final int STRIPE_MASK = STRIPES - 1;
+
+	private static final long[] _versions = new long[STRIPES];
+	private static final long VERSIONS_BASE = UNSAFE.arrayBaseOffset(long[].class);
+	private static final int VERSIONS_SHIFT = 3;
+
+	// Global clock; single writer (the thread in program order)
+	private static volatile long _clock = 1;
+
+	private OrecTable() { }
+
+	private static long address(Object instance, long offset) {
+		return VERSIONS_BASE + ((long) (AccessLog.hash(instance, offset) & STRIPE_MASK) << VERSIONS_SHIFT);
+	}
+
+	/** Starts a new epoch. Must only be called by the thread in program order. **/
+	static void advance() {
+		_clock = _clock + 1;
+	}
+
+	/** Stamps the stripe of (instance, offset), which was just written in program order **/
+	static void written(Object instance, long offset) {
+		UNSAFE.putOrderedLong(_versions, address(instance, offset), _clock);
+	}
+
+	static void written(AccessLog log, int i) {
+		if (log.isRange(i)) {
+			ArrayRange range = log.range(i);
+			for (int index = range._from; index < range.end(); index++) {
+				written(log._instances[i], AccessLog.elementOffset(range._type, index));
+			}
+		} else {
+			written(log._instances[i], log._offsets[i]);
+		}
+	}
+
+	/** Returns the version to log for a read of (instance, offset) that is about to be done, or UNKNOWN **/
+	static long version(Object instance, long offset) {
+		long clock = _clock;
+		long version = UNSAFE.getLongVolatile(_versions, address(instance, offset));
+		return (version < clock) ? version : UNKNOWN;
+	}
+
+	/** Checks if (instance, offset) was not written since its stripe had the given version **/
+	static boolean unchangedSince(Object instance, long offset, long version) {
+		return version != UNKNOWN && UNSAFE.getLongVolatile(_versions, address(instance, offset)) == version;
+	}
+}
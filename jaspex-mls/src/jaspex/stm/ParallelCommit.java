@@ -0,0 +1,118 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import jaspex.Options;
+
+/** Commit support for transactions with very large logs, used by -parallelcommit.
+  *
+  * Validation and writeback are done by the program-order thread, and every other speculation waits
+  * for them. For logs above PARALLEL_THRESHOLD entries, both are instead split into chunks that are run
+  * by a fork/join pool, while the committing thread waits for all of them; the commit is still only
+  * finished (and the next speculation can only commit) after every chunk is done.
+  *
+  * This is safe because a committing transaction is already in program order: no other thread writes
+  * to memory until it is done, and so chunks can validate and write back concurrently. The exception
+  * are write-sets where a location can have more than one entry, or that contain Futures (which must
+  * be resolved by the committing thread); those are still written back serially.
+  **/
+final class ParallelCommit {
+
+	private static final int PARALLEL_THRESHOLD = 16384;
+	private static final int CHUNK_SIZE = 4096;
+
+	private ParallelCommit() { }
+
+	// The pool is only created on the first large commit. Speculation workers are not used for this, as
+	// they are busy running (or waiting to commit) speculations.
+	private static final class PoolHolder {
+		static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	static boolean validate(ReadLog log) {
+		if (!Options.PARALLELCOMMIT || log.size() < PARALLEL_THRESHOLD) return log.validate();
+		return PoolHolder.POOL.invoke(new Validation(log, 0, log.size()));
+	}
+
+	static void writeback(WriteSet writeSet) {
+		if (!Options.PARALLELCOMMIT || writeSet.size() < PARALLEL_THRESHOLD || !writeSet.canWritebackOutOfOrder()) {
+			writeSet.writeback();
+			return;
+		}
+		PoolHolder.POOL.invoke(new Writeback(writeSet, 0, writeSet.size()));
+	}
+
+	private static final class Validation extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		private final ReadLog _log;
+		private final int _from;
+		private final int _to;
+
+		Validation(ReadLog log, int from, int to) {
+			_log = log;
+			_from = from;
+			_to = to;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (_to - _from <= CHUNK_SIZE) return _log.validate(_from, _to);
+
+			int middle = (_from + _to) >>> 1;
+			Validation left = new Validation(_log, _from, middle);
+			left.fork();
+			boolean right = new Validation(_log, middle, _to).compute();
+			// Even when the right half failed, left must be joined before the log can be released
+			return left.join() && right;
+		}
+	}
+
+	private static final class Writeback extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final WriteSet _writeSet;
+		private final int _from;
+		private final int _to;
+
+		Writeback(WriteSet writeSet, int from, int to) {
+			_writeSet = writeSet;
+			_from = from;
+			_to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (_to - _from <= CHUNK_SIZE) {
+				_writeSet.writeback(_from, _to);
+				return;
+			}
+
+			int middle = (_from + _to) >>> 1;
+			invokeAll(new Writeback(_writeSet, _from, middle), new Writeback(_writeSet, middle, _to));
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.stm;
+
+import static jaspex.util.Unsafe.UNSAFE;
+
+import java.util.Arrays;
+
+import jaspex.Options;
+
+/** Transaction read-set, kept as an append-only log of parallel arrays.
+  *
+  * Logs are owned by SpeculationTaskWorkerThreads and recycled between transactions, so logging a
+  * read does not allocate anything (other than when the log needs to grow).
+  *
+  * The log starts as a plain append-only list, which is the cheapest option for transactions that
+  * read few locations, or that read each location only once. When a log reaches _indexThreshold
+  * entries, we check how many of them are re-reads: if re-reads are common, an index on (instance,
+  * offset) is built and from then on re-reads are deduplicated (and checked against the previously
+  * read value, as a mismatch means the transaction is doomed); otherwise the check is postponed.
+  * The threshold used by new transactions adapts to the outcome of previous checks.
+  *
+  * With -orecs, each entry also logs the version of its stripe in the OrecTable, and validation only
+  * needs to compare the values of entries whose stripe was written since.
+  **/
+public final class ReadLog extends AccessLog {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	// Bounds for the adaptive index threshold
+	private static final int MIN_INDEX_THRESHOLD = 128;
+	private static final int MAX_INDEX_THRESHOLD = 1 << 20;
+	// Minimum fraction of re-reads (1/N) for the index to be worth it
+	private static final int REREAD_RATIO = 8;
+
+	// Threshold used by new transactions. Updated without synchronization: a lost update only
+	// delays the adaptation a bit.
+	private static int _globalIndexThreshold = 1024;
+
+	private int _indexThreshold = _globalIndexThreshold;
+	// Open-addressing index (entry position + 1, 0 for empty slots), or null while not indexed
+	private int[] _index;
+	// Slot where the entry being appended is to be indexed (set by previousRead())
+	private int _pendingSlot;
+
+	// Support for -incrementalvalidation: entries before _validatedUpTo were checked by the last
+	// incremental validation, and _fullyValidatedAt is the size of the log at the last full check
+	private int _validatedUpTo;
+	private int _fullyValidatedAt;
+
+	// Support for -orecs: version logged for each entry (or OrecTable.UNKNOWN)
+	private long[] _versions;
+
+	ReadLog() {
+		super(INITIAL_CAPACITY);
+		if (Options.ORECS) _versions = new long[INITIAL_CAPACITY];
+	}
+
+	/** Logs the version for entry pos, which was read with the given value. The version is only
+	  * trusted if the location still has that value after the version is read, as otherwise the
+	  * write that changed it may already be stamped.
+	  **/
+	private void logVersion(int pos, Object instance, long offset, byte type, long bits, Object reference) {
+		long version = OrecTable.version(instance, offset);
+		boolean unchanged = (type == OBJECT) ? UNSAFE.getObject(instance, offset) == reference :
+			getBits(instance, offset, type) == bits;
+		if (pos >= _versions.length) _versions = Arrays.copyOf(_versions, _instances.length);
+		_versions[pos] = unchanged ? version : OrecTable.UNKNOWN;
+	}
+
+	/** Checks if entry i is still valid **/
+	private boolean isValid(int i) {
+		if (Options.ORECS && !isRange(i) && OrecTable.unchangedSince(_instances[i], _offsets[i], _versions[i])) {
+			return true;
+		}
+		return matchesMemory(i);
+	}
+
+	/** With an active index, returns the position of a previous read of (instance, offset), or
+	  * -1 if there is none (in which case _pendingSlot is set for the entry that will be appended).
+	  **/
+	private int previousRead(Object instance, long offset) {
+		int[] index = _index;
+		int mask = index.length - 1;
+		int slot = hash(instance, offset) & mask;
+		while (true) {
+			int entry = index[slot] - 1;
+			if (entry < 0) break;
+			if (_instances[entry] == instance && _offsets[entry] == offset) return entry;
+			slot = (slot + 1) & mask;
+		}
+		_pendingSlot = slot;
+		return -1;
+	}
+
+	private int logEntry(Object instance, long offset, byte type) {
+		int pos = append(instance, offset, type);
+		if (_index != null) {
+			_index[_pendingSlot] = pos + 1;
+			if (_size * 2 > _index.length) buildIndex();
+		} else if (_size >= _indexThreshold) {
+			checkIndex();
+		}
+		return pos;
+	}
+
+	/** Rebuilds the index from scratch, returning the number of entries that were re-reads **/
+	private int buildIndex() {
+		int capacity = Integer.highestOneBit(_size) * 4;
+		int[] index = new int[capacity];
+		int mask = capacity - 1;
+		int rereads = 0;
+		entries: for (int i = 0; i < _size; i++) {
+			Object instance = _instances[i];
+			long offset = _offsets[i];
+			int slot = hash(instance, offset) & mask;
+			while (index[slot] != 0) {
+				int entry = index[slot] - 1;
+				if (_instances[entry] == instance && _offsets[entry] == offset) {
+					rereads++;
+					continue entries;
+				}
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+		_index = index;
+		return rereads;
+	}
+
+	/** Decides if this log should switch to the indexed representation **/
+	private void checkIndex() {
+		int rereads = buildIndex();
+		int threshold = _globalIndexThreshold;
+		if (rereads * REREAD_RATIO >= _size) {
+			// Worth it: keep the index, and check earlier in future transactions
+			_globalIndexThreshold = Math.max(MIN_INDEX_THRESHOLD, threshold / 2);
+		} else {
+			// Not worth it (yet): check again when the log is bigger
+			_index = null;
+			_indexThreshold = _size * 4;
+			_globalIndexThreshold = Math.min(MAX_INDEX_THRESHOLD, threshold * 2);
+		}
+	}
+
+	// The log* methods return false if the location was already read with a different value, in which
+	// case the transaction is doomed. This can only be detected once the log is indexed (and never for
+	// locations that are part of a range).
+
+	boolean logObject(Object instance, long offset, Object value) {
+		if (_index != null) {
+			int prev = previousRead(instance, offset);
+			if (prev >= 0) return isRange(prev) || _references[prev] == value;
+		}
+		int pos = logEntry(instance, offset, OBJECT);
+		_references[pos] = value;
+		if (Options.ORECS) logVersion(pos, instance, offset, OBJECT, 0, value);
+		return true;
+	}
+
+	/** Logs a primitive value of the given type, represented as raw bits **/
+	private boolean logBits(Object instance, long offset, byte type, long value) {
+		if (_index != null) {
+			int prev = previousRead(instance, offset);
+			if (prev >= 0) return isRange(prev) || _values[prev] == value;
+		}
+		int pos = logEntry(instance, offset, type);
+		_values[pos] = value;
+		if (Options.ORECS) logVersion(pos, instance, offset, type, value, null);
+		return true;
+	}
+
+	boolean logBoolean(Object instance, long offset, boolean value) {
+		return logBits(instance, offset, BOOLEAN, value ? 1 : 0);
+	}
+
+	boolean logByte(Object instance, long offset, byte value) {
+		return logBits(instance, offset, BYTE, value);
+	}
+
+	boolean logChar(Object instance, long offset, char value) {
+		return logBits(instance, offset, CHAR, value);
+	}
+
+	boolean logDouble(Object instance, long offset, double value) {
+		return logBits(instance, offset, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	boolean logFloat(Object instance, long offset, float value) {
+		return logBits(instance, offset, FLOAT, Float.floatToRawIntBits(value));
+	}
+
+	boolean logInt(Object instance, long offset, int value) {
+		return logBits(instance, offset, INT, value);
+	}
+
+	boolean logLong(Object instance, long offset, long value) {
+		return logBits(instance, offset, LONG, value);
+	}
+
+	boolean logShort(Object instance, long offset, short value) {
+		return logBits(instance, offset, SHORT, value);
+	}
+
+	/** Logs a read of an array element. Reads of consecutive elements are coalesced into range entries,
+	  * which keep a snapshot of the values read.
+	  **/
+	boolean logElement(Object array, byte type, int index, long bits, Object reference) {
+		int open = openEntryEndingAt(array, type, index);
+		if (open >= 0) {
+			extendRange(open, index, bits, reference);
+			return true;
+		}
+
+		int size = _size;
+		long offset = elementOffset(type, index);
+		boolean result = (type == OBJECT) ? logObject(array, offset, reference) : logBits(array, offset, type, bits);
+		if (_size > size) openEntry(size);
+		return result;
+	}
+
+	/** Logs a read of count consecutive elements of array as a single range entry, taking a snapshot of
+	  * their current values
+	  **/
+	void logRange(Object array, byte type, int from, int count) {
+		int pos = append(array, elementOffset(type, from), (byte) (type | RANGE));
+		_references[pos] = new ArrayRange(type, from, array, from, count);
+		openEntry(pos);
+		if (_index == null && _size >= _indexThreshold) checkIndex();
+	}
+
+	boolean isIndexed() {
+		return _index != null;
+	}
+
+	boolean validate() {
+		return firstInvalid() < 0;
+	}
+
+	/** Validates only the entries in [from, to) (used by ParallelCommit) **/
+	boolean validate(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (!isValid(i)) return false;
+		}
+		return true;
+	}
+
+	/** Returns the position of the first entry that no longer matches memory, or -1 if all are valid **/
+	int firstInvalid() {
+		for (int i = 0; i < _size; i++) {
+			if (!isValid(i)) return i;
+		}
+		return -1;
+	}
+
+	/** Validates the entries logged since the last call. Older entries can also become invalid, so
+	  * whenever the log doubles in size all entries are checked again, which keeps the total
+	  * cost linear in the size of the log.
+	  **/
+	boolean validateIncremental() {
+		int from = _validatedUpTo;
+		if (_size >= _fullyValidatedAt * 2) {
+			from = 0;
+			_fullyValidatedAt = _size;
+		}
+		for (int i = from; i < _size; i++) {
+			if (!isValid(i)) return false;
+		}
+		_validatedUpTo = _size;
+		return true;
+	}
+
+	@Override
+	boolean recycle() {
+		if (!super.recycle()) return false;
+		_index = null;
+		_indexThreshold = _globalIndexThreshold;
+		_validatedUpTo = 0;
+		_fullyValidatedAt = 0;
+		return true;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Table of live speculative readers, used by -eagerinvalidation.
+  *
+  * Each speculative transaction gets one of 64 reader bits, and every location it reads sets its bit
+  * on the stripe that the (instance, offset) pair hashes to. When a location is written outside a
+  * transaction (or during writeback), every transaction with a bit set on its stripe is marked, and
+  * re-validates at its next barrier instead of waiting for its commit.
+  *
+  * Bitmaps are updated with plain (racy) reads and writes. A lost update can only cause a reader to
+  * miss an eager notification (it will still fail validation at commit time), or to be marked
+  * spuriously (in which case its validation succeeds), so correctness never depends on this table.
+  **/
+final class ReaderTable {
+
+	private static final int STRIPES = 1 << 14;
+	private static final int STRIPE_MASK = STRIPES - 1;
+
+	private static final long[] _readers = new long[STRIPES];
+	// Transaction currently owning each reader bit
+	private static final AtomicReferenceArray<Transaction> _owners =
+		new AtomicReferenceArray<Transaction>(Long.SIZE);
+
+	private ReaderTable() { }
+
+	private static int stripe(Object instance, long offset) {
+		return AccessLog.hash(instance, offset) & STRIPE_MASK;
+	}
+
+	/** Returns the reader bit assigned to tx, or 0 if all of them are taken **/
+	static long register(Transaction tx) {
+		for (int i = 0; i < Long.SIZE; i++) {
+			if (_owners.get(i) == null && _owners.compareAndSet(i, null, tx)) return 1L << i;
+		}
+		return 0;
+	}
+
+	/** Clears the bit from the stripes of every location in the read-set, and frees it **/
+	static void unregister(long bit, ReadLog log) {
+		if (log != null) {
+			for (int i = 0; i < log._size; i++) {
+				if (log.isRange(i)) {
+					ArrayRange range = log.range(i);
+					for (int index = range._from; index < range.end(); index++) {
+						removeReader(log._instances[i], AccessLog.elementOffset(range._type, index), bit);
+					}
+				} else {
+					removeReader(log._instances[i], log._offsets[i], bit);
+				}
+			}
+		}
+		_owners.set(Long.numberOfTrailingZeros(bit), null);
+	}
+
+	private static void removeReader(Object instance, long offset, long bit) {
+		int stripe = stripe(instance, offset);
+		long readers = _readers[stripe];
+		if ((readers & bit) != 0) _readers[stripe] = readers & ~bit;
+	}
+
+	static void addReader(Object instance, long offset, long bit) {
+		int stripe = stripe(instance, offset);
+		long readers = _readers[stripe];
+		// Avoid dirtying the cache line when the bit is already set
+		if ((readers & bit) == 0) _readers[stripe] = readers | bit;
+	}
+
+	/** Marks every transaction that may have read a location written back from entry i of log **/
+	static void invalidate(AccessLog log, int i) {
+		if (log.isRange(i)) {
+			ArrayRange range = log.range(i);
+			for (int index = range._from; index < range.end(); index++) {
+				invalidate(log._instances[i], AccessLog.elementOffset(range._type, index));
+			}
+		} else {
+			invalidate(log._instances[i], log._offsets[i]);
+		}
+	}
+
+	/** Marks every transaction that may have read (instance, offset) **/
+	static void invalidate(Object instance, long offset) {
+		long readers = _readers[stripe(instance, offset)];
+		while (readers != 0) {
+			Transaction tx = _owners.get(Long.numberOfTrailingZeros(readers));
+			if (tx != null) tx.markInvalidated();
+			readers &= readers - 1;
+		}
+	}
+}
@@ -21,6 +21,7 @@
 package jaspex.stm;
 
 import static jaspex.util.Unsafe.UNSAFE;
+import static jaspex.stm.FieldAccess.*;
 
 import java.util.*;
 import java.util.concurrent.ExecutionException;
@@ -32,7 +33,6 @@ import org.slf4j.LoggerFactory;
 import jaspex.Options;
 import jaspex.speculation.nsruntime.SpeculationTask;
 import jaspex.speculation.nsruntime.Executor.SpeculationTaskWorkerThread;
-import jaspex.stm.FieldAccess.Type;
 
 public final class Transaction {
 
@@ -112,11 +112,21 @@ public final class Transaction {
 	}
 
 	public static void abort() {
-		/*Transaction tx = current();
-		if (tx != null) {
+		Transaction tx = current();
+		/*if (tx != null) {
 			if (tx.abortAction != null) tx.abortAction.runActions();
 		}*/
-		if (!Options.FASTMODE) assert (current() != null) : Thread.currentThread() + " " + current();
+		if (!Options.FASTMODE) assert (tx != null) : Thread.currentThread() + " " + tx;
+		setCurrent(null);
+		tx.finish();
+		tx.releaseReadLog();
+		tx.releaseWriteSet();
+	}
+
+	/** Removes the current transaction from the current thread, without aborting it.
+	  * Used when a task is frozen, as its transaction may later be resumed by another thread.
+	  **/
+	public static void detach() {
 		setCurrent(null);
 	}
 
@@ -124,188 +134,283 @@ public final class Transaction {
 		return current().commitTx();
 	}
 
+	/** Used by -checkpoints: returns the position in the read-set of the first read of the current
+	  * transaction that is no longer valid, or -1 if there is none.
+	  **/
+	public static int firstInvalidRead() {
+		Transaction tx = current();
+		// No checkpoint can be trusted if a FieldGuard was invalidated during the transaction
+		if (!tx.fieldGuardsIntact()) return 0;
+		return tx.readLog.firstInvalid();
+	}
+
+	/** Used by -checkpoints: commits only the first readCount/writeCount entries of the read-set and
+	  * write-set of the current transaction (the state of the transaction when a checkpoint was taken);
+	  * the work done after the checkpoint is discarded, and is to be redone non-transactionally.
+	  * The caller must have already checked that the read-set entries being kept are valid.
+	  **/
+	public static void commitPrefix(int readCount, int writeCount) {
+		Transaction tx = current();
+		tx.releaseReaderBit();
+		tx.readLog.truncate(readCount);
+		if (tx.writeSet != null) tx.writeSet.truncate(writeCount);
+
+		setCurrent(null);
+		if (Options.ORECS) OrecTable.advance();
+		if (tx.writeSet != null) ParallelCommit.writeback(tx.writeSet);
+		if (Options.TXSTATS) tx.printStats(false);
+
+		tx.finish();
+		tx.releaseReadLog();
+		tx.releaseWriteSet();
+	}
+
+	/** Used by -incrementalvalidation: checks the reads done by the current transaction (if any),
+	  * aborting it right away if it is already doomed.
+	  **/
+	public static void validateIncremental() {
+		Transaction tx = current();
+		if (tx != null) tx.incrementalValidation();
+	}
+
+	/** Called after every store that is done directly to memory by the barriers below **/
+	private static void stored(Transaction tx, Object instance, long offset) {
+		// Only stores done in program order are versioned; the others are either to objects that are
+		// local to a transaction (-detectlocal) or done by dummy transactions
+		if (Options.ORECS && tx == null) OrecTable.written(instance, offset);
+		if (Options.EAGERINVALIDATION) ReaderTable.invalidate(instance, offset);
+	}
+
 	// Transactional Reads/Writes API
 	// NORMAL LOADS
 	public static Object loadObject(Object instance, Object value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ObjectFieldAccess) tx.tmRead(new ObjectFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadObject(instance, offset, value);
 	}
 
 	public static boolean loadBoolean(Object instance, boolean value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((BooleanFieldAccess) tx.tmRead(new BooleanFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadBoolean(instance, offset, value);
 	}
 
 	public static byte loadByte(Object instance, byte value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ByteFieldAccess) tx.tmRead(new ByteFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadByte(instance, offset, value);
 	}
 
 	public static char loadChar(Object instance, char value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((CharFieldAccess) tx.tmRead(new CharFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadChar(instance, offset, value);
 	}
 
 	public static double loadDouble(Object instance, double value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((DoubleFieldAccess) tx.tmRead(new DoubleFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadDouble(instance, offset, value);
 	}
 
 	public static float loadFloat(Object instance, float value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((FloatFieldAccess) tx.tmRead(new FloatFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadFloat(instance, offset, value);
 	}
 
 	public static int loadInt(Object instance, int value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((IntFieldAccess) tx.tmRead(new IntFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadInt(instance, offset, value);
 	}
 
 	public static long loadLong(Object instance, long value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((LongFieldAccess) tx.tmRead(new LongFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadLong(instance, offset, value);
 	}
 
 	public static short loadShort(Object instance, short value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ShortFieldAccess) tx.tmRead(new ShortFieldAccess(instance, offset, value)))._value;
+		return tx.tmReadShort(instance, offset, value);
+	}
+
+	// EFFECTIVELY FINAL LOADS (-effectivelyfinal)
+	// Fields that are only written during their initialization do not need to be logged in the read-set,
+	// unless their guard was invalidated by a class loaded later
+	public static Object loadImmutableObject(Object instance, Object value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadObject(instance, value, offset);
+	}
+
+	public static boolean loadImmutableBoolean(Object instance, boolean value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadBoolean(instance, value, offset);
+	}
+
+	public static byte loadImmutableByte(Object instance, byte value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadByte(instance, value, offset);
+	}
+
+	public static char loadImmutableChar(Object instance, char value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadChar(instance, value, offset);
+	}
+
+	public static double loadImmutableDouble(Object instance, double value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadDouble(instance, value, offset);
+	}
+
+	public static float loadImmutableFloat(Object instance, float value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadFloat(instance, value, offset);
+	}
+
+	public static int loadImmutableInt(Object instance, int value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadInt(instance, value, offset);
+	}
+
+	public static long loadImmutableLong(Object instance, long value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadLong(instance, value, offset);
+	}
+
+	public static short loadImmutableShort(Object instance, short value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadShort(instance, value, offset);
 	}
 
 	// NORMAL STORES
 	public static void storeObject(Object instance, Object value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putObject(instance, offset, value); }
-		else { tx.tmWrite(new ObjectFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putObject(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteObject(instance, offset, value); }
 	}
 
 	public static void storeBoolean(Object instance, boolean value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putBoolean(instance, offset, value); }
-		else { tx.tmWrite(new BooleanFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putBoolean(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteBoolean(instance, offset, value); }
 	}
 
 	public static void storeByte(Object instance, byte value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putByte(instance, offset, value); }
-		else { tx.tmWrite(new ByteFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putByte(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteByte(instance, offset, value); }
 	}
 
 	public static void storeChar(Object instance, char value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putChar(instance, offset, value); }
-		else { tx.tmWrite(new CharFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putChar(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteChar(instance, offset, value); }
 	}
 
 	public static void storeDouble(Object instance, double value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putDouble(instance, offset, value); }
-		else { tx.tmWrite(new DoubleFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putDouble(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteDouble(instance, offset, value); }
 	}
 
 	public static void storeFloat(Object instance, float value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putFloat(instance, offset, value); }
-		else { tx.tmWrite(new FloatFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putFloat(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteFloat(instance, offset, value); }
 	}
 
 	public static void storeInt(Object instance, int value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putInt(instance, offset, value); }
-		else { tx.tmWrite(new IntFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putInt(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteInt(instance, offset, value); }
 	}
 
 	public static void storeLong(Object instance, long value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putLong(instance, offset, value); }
-		else { tx.tmWrite(new LongFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putLong(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteLong(instance, offset, value); }
 	}
 
 	public static void storeShort(Object instance, short value, long offset) {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putShort(instance, offset, value); }
-		else { tx.tmWrite(new ShortFieldAccess(instance, offset, value)); }
+		if (tx == null || (Options.DETECTLOCAL && isLocal(tx, instance)) || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putShort(instance, offset, value); stored(tx, instance, offset); }
+		else { tx.tmWriteShort(instance, offset, value); }
 	}
 
 	// FUTURE STORES
 	public static void storeFutureObject(Object instance, Future<Object> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putObject(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.OBJECT)); }
+		if (tx == null) { UNSAFE.putObject(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.OBJECT); }
 	}
 
 	public static void storeFutureBoolean(Object instance, Future<Boolean> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putBoolean(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.BOOLEAN)); }
+		if (tx == null) { UNSAFE.putBoolean(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.BOOLEAN); }
 	}
 
 	public static void storeFutureByte(Object instance, Future<Byte> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putByte(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.BYTE)); }
+		if (tx == null) { UNSAFE.putByte(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.BYTE); }
 	}
 
 	public static void storeFutureChar(Object instance, Future<Character> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putChar(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.CHAR)); }
+		if (tx == null) { UNSAFE.putChar(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.CHAR); }
 	}
 
 	public static void storeFutureDouble(Object instance, Future<Double> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putDouble(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.DOUBLE)); }
+		if (tx == null) { UNSAFE.putDouble(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.DOUBLE); }
 	}
 
 	public static void storeFutureFloat(Object instance, Future<Float> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putFloat(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.FLOAT)); }
+		if (tx == null) { UNSAFE.putFloat(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.FLOAT); }
 	}
 
 	public static void storeFutureInt(Object instance, Future<Integer> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putInt(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.INT)); }
+		if (tx == null) { UNSAFE.putInt(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.INT); }
 	}
 
 	public static void storeFutureLong(Object instance, Future<Long> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putLong(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.LONG)); }
+		if (tx == null) { UNSAFE.putLong(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.LONG); }
 	}
 
 	public static void storeFutureShort(Object instance, Future<Short> future, long offset) throws InterruptedException, ExecutionException {
 		if (instance == null) throw new NullPointerException();
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putShort(instance, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(instance, offset, future, Type.SHORT)); }
+		if (tx == null) { UNSAFE.putShort(instance, offset, future.get()); stored(tx, instance, offset); }
+		else { tx.tmWriteFuture(instance, offset, future, AccessLog.SHORT); }
 	}
 
 	// Alternate versions of transactional Reads/Writes API for -staticworkaround
@@ -313,165 +418,211 @@ public final class Transaction {
 	public static Object loadObject(StaticFieldBase sfb, Object value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ObjectFieldAccess) tx.tmRead(new ObjectFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadObject(sfb._staticFieldBase, offset, value);
 	}
 
 	public static boolean loadBoolean(StaticFieldBase sfb, boolean value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((BooleanFieldAccess) tx.tmRead(new BooleanFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadBoolean(sfb._staticFieldBase, offset, value);
 	}
 
 	public static byte loadByte(StaticFieldBase sfb, byte value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ByteFieldAccess) tx.tmRead(new ByteFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadByte(sfb._staticFieldBase, offset, value);
 	}
 
 	public static char loadChar(StaticFieldBase sfb, char value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((CharFieldAccess) tx.tmRead(new CharFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadChar(sfb._staticFieldBase, offset, value);
 	}
 
 	public static double loadDouble(StaticFieldBase sfb, double value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((DoubleFieldAccess) tx.tmRead(new DoubleFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadDouble(sfb._staticFieldBase, offset, value);
 	}
 
 	public static float loadFloat(StaticFieldBase sfb, float value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((FloatFieldAccess) tx.tmRead(new FloatFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadFloat(sfb._staticFieldBase, offset, value);
 	}
 
 	public static int loadInt(StaticFieldBase sfb, int value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((IntFieldAccess) tx.tmRead(new IntFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadInt(sfb._staticFieldBase, offset, value);
 	}
 
 	public static long loadLong(StaticFieldBase sfb, long value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((LongFieldAccess) tx.tmRead(new LongFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadLong(sfb._staticFieldBase, offset, value);
 	}
 
 	public static short loadShort(StaticFieldBase sfb, short value, int offset) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return value;
-		return ((ShortFieldAccess) tx.tmRead(new ShortFieldAccess(sfb._staticFieldBase, offset, value)))._value;
+		return tx.tmReadShort(sfb._staticFieldBase, offset, value);
+	}
+
+	// EFFECTIVELY FINAL LOADS (-staticworkaround, -effectivelyfinal)
+	public static Object loadImmutableObject(StaticFieldBase sfb, Object value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadObject(sfb, value, offset);
+	}
+
+	public static boolean loadImmutableBoolean(StaticFieldBase sfb, boolean value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadBoolean(sfb, value, offset);
+	}
+
+	public static byte loadImmutableByte(StaticFieldBase sfb, byte value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadByte(sfb, value, offset);
+	}
+
+	public static char loadImmutableChar(StaticFieldBase sfb, char value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadChar(sfb, value, offset);
+	}
+
+	public static double loadImmutableDouble(StaticFieldBase sfb, double value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadDouble(sfb, value, offset);
+	}
+
+	public static float loadImmutableFloat(StaticFieldBase sfb, float value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadFloat(sfb, value, offset);
+	}
+
+	public static int loadImmutableInt(StaticFieldBase sfb, int value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadInt(sfb, value, offset);
+	}
+
+	public static long loadImmutableLong(StaticFieldBase sfb, long value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadLong(sfb, value, offset);
+	}
+
+	public static short loadImmutableShort(StaticFieldBase sfb, short value, int offset, int guard) {
+		if (!FieldGuard.isMutable(guard)) return value;
+		return loadShort(sfb, value, offset);
 	}
 
 	// NORMAL STORES (-staticworkaround)
 	public static void storeObject(Object value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putObject(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new ObjectFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putObject(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteObject(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeBoolean(boolean value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putBoolean(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new BooleanFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putBoolean(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteBoolean(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeByte(byte value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putByte(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new ByteFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putByte(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteByte(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeChar(char value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putChar(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new CharFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putChar(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteChar(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeDouble(double value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putDouble(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new DoubleFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putDouble(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteDouble(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeFloat(float value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putFloat(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new FloatFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putFloat(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFloat(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeInt(int value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putInt(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new IntFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putInt(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteInt(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeLong(long value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putLong(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new LongFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putLong(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteLong(sfb._staticFieldBase, offset, value); }
 	}
 
 	public static void storeShort(short value, StaticFieldBase sfb, long offset) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putShort(sfb._staticFieldBase, offset, value); }
-		else { tx.tmWrite(new ShortFieldAccess(sfb._staticFieldBase, offset, value)); }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { UNSAFE.putShort(sfb._staticFieldBase, offset, value); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteShort(sfb._staticFieldBase, offset, value); }
 	}
 
 	// FUTURE STORES (-staticworkaround)
 	public static void storeFutureObject(Future<Object> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putObject(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.OBJECT)); }
+		if (tx == null) { UNSAFE.putObject(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.OBJECT); }
 	}
 
 	public static void storeFutureBoolean(Future<Boolean> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putBoolean(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.BOOLEAN)); }
+		if (tx == null) { UNSAFE.putBoolean(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.BOOLEAN); }
 	}
 
 	public static void storeFutureByte(Future<Byte> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putByte(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.BYTE)); }
+		if (tx == null) { UNSAFE.putByte(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.BYTE); }
 	}
 
 	public static void storeFutureChar(Future<Character> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putChar(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.CHAR)); }
+		if (tx == null) { UNSAFE.putChar(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.CHAR); }
 	}
 
 	public static void storeFutureDouble(Future<Double> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putDouble(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.DOUBLE)); }
+		if (tx == null) { UNSAFE.putDouble(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.DOUBLE); }
 	}
 
 	public static void storeFutureFloat(Future<Float> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putFloat(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.FLOAT)); }
+		if (tx == null) { UNSAFE.putFloat(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.FLOAT); }
 	}
 
 	public static void storeFutureInt(Future<Integer> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putInt(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.INT)); }
+		if (tx == null) { UNSAFE.putInt(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.INT); }
 	}
 
 	public static void storeFutureLong(Future<Long> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putLong(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.LONG)); }
+		if (tx == null) { UNSAFE.putLong(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.LONG); }
 	}
 
 	public static void storeFutureShort(Future<Short> future, StaticFieldBase sfb, long offset) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { UNSAFE.putShort(sfb._staticFieldBase, offset, future.get()); }
-		else { tx.tmWrite(new FutureFieldAccess(sfb._staticFieldBase, offset, future, Type.SHORT)); }
+		if (tx == null) { UNSAFE.putShort(sfb._staticFieldBase, offset, future.get()); stored(tx, sfb._staticFieldBase, offset); }
+		else { tx.tmWriteFuture(sfb._staticFieldBase, offset, future, AccessLog.SHORT); }
 	}
 
 	// ARRAY LOADS
@@ -488,201 +639,257 @@ public final class Transaction {
 	public static Object arrayLoadObject(Object[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((ObjectFieldAccess) tx.tmRead(new ObjectFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadObject(array, pos, array[pos]);
 	}
 
 	public static boolean arrayLoadBoolean(boolean[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((BooleanFieldAccess) tx.tmRead(new BooleanFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadBoolean(array, pos, array[pos]);
 	}
 
 	public static byte arrayLoadByte(byte[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((ByteFieldAccess) tx.tmRead(new ByteFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadByte(array, pos, array[pos]);
 	}
 
 	public static char arrayLoadChar(char[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((CharFieldAccess) tx.tmRead(new CharFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadChar(array, pos, array[pos]);
 	}
 
 	public static double arrayLoadDouble(double[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((DoubleFieldAccess) tx.tmRead(new DoubleFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadDouble(array, pos, array[pos]);
 	}
 
 	public static float arrayLoadFloat(float[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((FloatFieldAccess) tx.tmRead(new FloatFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadFloat(array, pos, array[pos]);
 	}
 
 	public static int arrayLoadInt(int[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((IntFieldAccess) tx.tmRead(new IntFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadInt(array, pos, array[pos]);
 	}
 
 	public static long arrayLoadLong(long[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((LongFieldAccess) tx.tmRead(new LongFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadLong(array, pos, array[pos]);
 	}
 
 	public static short arrayLoadShort(short[] array, int pos) {
 		Transaction tx = Transaction.current();
 		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) return array[pos];
-		return ((ShortFieldAccess) tx.tmRead(new ShortFieldAccess(array, pos, array[pos])))._value;
+		return tx.tmArrayReadShort(array, pos, array[pos]);
 	}
 
 	// ARRAY STORES
 	public static void arrayStoreObject(Object[] array, int pos, Object value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(OBJECT_ARRAY_BASE, OBJECT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		Object dummy = array[pos];
-		tx.tmWrite(new ObjectFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.OBJECT, pos, 0, value);
 	}
 
 	public static void arrayStoreBoolean(boolean[] array, int pos, boolean value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(BOOLEAN_ARRAY_BASE, BOOLEAN_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		boolean dummy = array[pos];
-		tx.tmWrite(new BooleanFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.BOOLEAN, pos, value ? 1 : 0, null);
 	}
 
 	public static void arrayStoreByte(byte[] array, int pos, byte value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(BYTE_ARRAY_BASE, BYTE_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		byte dummy = array[pos];
-		tx.tmWrite(new ByteFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.BYTE, pos, value, null);
 	}
 
 	public static void arrayStoreChar(char[] array, int pos, char value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(CHAR_ARRAY_BASE, CHAR_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		char dummy = array[pos];
-		tx.tmWrite(new CharFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.CHAR, pos, value, null);
 	}
 
 	public static void arrayStoreDouble(double[] array, int pos, double value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(DOUBLE_ARRAY_BASE, DOUBLE_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		double dummy = array[pos];
-		tx.tmWrite(new DoubleFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.DOUBLE, pos, Double.doubleToRawLongBits(value), null);
 	}
 
 	public static void arrayStoreFloat(float[] array, int pos, float value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(FLOAT_ARRAY_BASE, FLOAT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		float dummy = array[pos];
-		tx.tmWrite(new FloatFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.FLOAT, pos, Float.floatToRawIntBits(value), null);
 	}
 
 	public static void arrayStoreInt(int[] array, int pos, int value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(INT_ARRAY_BASE, INT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		int dummy = array[pos];
-		tx.tmWrite(new IntFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.INT, pos, value, null);
 	}
 
 	public static void arrayStoreLong(long[] array, int pos, long value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(LONG_ARRAY_BASE, LONG_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		long dummy = array[pos];
-		tx.tmWrite(new LongFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.LONG, pos, value, null);
 	}
 
 	public static void arrayStoreShort(short[] array, int pos, short value) {
 		Transaction tx = Transaction.current();
-		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; return; }
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) { array[pos] = value; stored(tx, array, positionOffset(SHORT_ARRAY_BASE, SHORT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		short dummy = array[pos];
-		tx.tmWrite(new ShortFieldAccess(array, pos, value));
+		tx.tmArrayWrite(array, AccessLog.SHORT, pos, value, null);
 	}
 
 	// FUTURE STORES TO ARRAYS
 	public static void arrayStoreFutureObject(Object[] array, int pos, Future<Object> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(OBJECT_ARRAY_BASE, OBJECT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		Object dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.OBJECT, pos, future);
 	}
 
 	public static void arrayStoreFutureBoolean(boolean[] array, int pos, Future<Boolean> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(BOOLEAN_ARRAY_BASE, BOOLEAN_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		boolean dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.BOOLEAN, pos, future);
 	}
 
 	public static void arrayStoreFutureByte(byte[] array, int pos, Future<Byte> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(BYTE_ARRAY_BASE, BYTE_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		byte dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.BYTE, pos, future);
 	}
 
 	public static void arrayStoreFutureChar(char[] array, int pos, Future<Character> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(CHAR_ARRAY_BASE, CHAR_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		char dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.CHAR, pos, future);
 	}
 
 	public static void arrayStoreFutureDouble(double[] array, int pos, Future<Double> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(DOUBLE_ARRAY_BASE, DOUBLE_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		double dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.DOUBLE, pos, future);
 	}
 
 	public static void arrayStoreFutureFloat(float[] array, int pos, Future<Float> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(FLOAT_ARRAY_BASE, FLOAT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		float dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.FLOAT, pos, future);
 	}
 
 	public static void arrayStoreFutureInt(int[] array, int pos, Future<Integer> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(INT_ARRAY_BASE, INT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		Object dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.INT, pos, future);
 	}
 
 	public static void arrayStoreFutureLong(long[] array, int pos, Future<Long> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(LONG_ARRAY_BASE, LONG_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		long dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.LONG, pos, future);
 	}
 
 	public static void arrayStoreFutureShort(short[] array, int pos, Future<Short> future) throws InterruptedException, ExecutionException {
 		Transaction tx = Transaction.current();
-		if (tx == null) { array[pos] = future.get(); return; }
+		if (tx == null) { array[pos] = future.get(); stored(tx, array, positionOffset(SHORT_ARRAY_BASE, SHORT_ARRAY_SHIFT, pos)); return; }
 		@SuppressWarnings("unused")
 		short dummy = array[pos];
-		tx.tmWrite(new FutureFieldAccess(array, pos, future));
+		tx.tmArrayWriteFuture(array, AccessLog.SHORT, pos, future);
+	}
+
+	// BULK ARRAY COPY
+
+	/** Transactional version of System.arraycopy, used by Replacements. Inside a transaction, the source
+	  * elements are logged as a single read range, and the destination elements are buffered as a single
+	  * write range.
+	  * Returns false when the copy has to be done element by element instead (for instance, if the
+	  * transaction already wrote to either array). The caller is expected to have already checked for
+	  * null arrays and negative positions/length.
+	  **/
+	public static boolean arraycopy(Object src, int srcPos, Object dest, int destPos, int length) {
+		Transaction tx = Transaction.current();
+		if (tx == null || (Options.ALLOWDUMMYTX && tx.isDummy)) {
+			System.arraycopy(src, srcPos, dest, destPos, length);
+			if (Options.ORECS || Options.EAGERINVALIDATION) {
+				byte type = AccessLog.arrayType(dest);
+				for (int i = 0; i < length; i++) {
+					stored(tx, dest, AccessLog.elementOffset(type, destPos + i));
+				}
+			}
+			return true;
+		}
+
+		byte type = AccessLog.arrayType(src);
+		if (type < 0 || type != AccessLog.arrayType(dest)) return false;
+		// Object arrays need the per-element type checks done by the element-wise version
+		if (type == AccessLog.OBJECT &&
+			!dest.getClass().getComponentType().isAssignableFrom(src.getClass().getComponentType())) {
+			return false;
+		}
+		if (srcPos > java.lang.reflect.Array.getLength(src) - length ||
+			destPos > java.lang.reflect.Array.getLength(dest) - length) return false;
+
+		return tx.tmArraycopy(src, srcPos, dest, destPos, length, type);
+	}
+
+	private boolean tmArraycopy(Object src, int srcPos, Object dest, int destPos, int length, byte type) {
+		// Reads of src must see earlier writes by this transaction, and the new write range must not
+		// overlap other entries for dest
+		if (writeSet != null && (writeSet.mayHaveElements(src) || writeSet.mayHaveElements(dest))) {
+			return false;
+		}
+
+		// As the snapshot is taken before any write, this also works when src == dest
+		readLog.logRange(src, type, srcPos, length);
+		ArrayRange snapshot = readLog.range(readLog.size() - 1);
+		if (Options.EAGERINVALIDATION && readerBit != 0) {
+			for (int i = 0; i < length; i++) {
+				ReaderTable.addReader(src, AccessLog.elementOffset(type, srcPos + i), readerBit);
+			}
+		}
+		writeSet().putRange(dest, destPos, snapshot);
+
+		afterWrite();
+		return true;
 	}
 
 	// Support for -detectlocal
@@ -711,6 +918,11 @@ public final class Transaction {
 	public Transaction(SpeculationTask speculationTask, boolean isDummy) {
 		this.speculationTask = speculationTask;
 		this.isDummy = Options.ALLOWDUMMYTX && isDummy;
+		readLog = acquireReadLog();
+		if (Options.EFFECTIVELYFINAL) fieldGuardEpoch = FieldGuard.epoch();
+		if (Options.EAGERINVALIDATION && !this.isDummy) readerBit = ReaderTable.register(this);
+		// Barriers must be relinked before the transaction reads anything
+		if (Options.INDYBARRIERS && !this.isDummy) BarrierSwitch.transactionStarted();
 		setCurrent(this);
 	}
 
@@ -719,21 +931,126 @@ public final class Transaction {
 	// Used for supporting -nttracker
 	public NonTransactionalStateTracker nonTransStateTracker;
 
-	private FieldAccess readSet = null;
+	// Read-set, borrowed from the worker thread that created the transaction. Note that a
+	// frozen transaction keeps its log, and may give it back to a different thread.
+	private ReadLog readLog;
 
-	// Used only with -readmap
-	private HashMap<FieldAccess,FieldAccess> readSetMap;
+	private final boolean readSetEmpty() {
+		return (readLog == null) || readLog.isEmpty();
+	}
 
-	private final Iterable<FieldAccess> readSetIterator() {
-		return Options.READMAP ? readSetMap.values() : readSet;
+	private static ReadLog acquireReadLog() {
+		ReadLog log = ((SpeculationTaskWorkerThread) Thread.currentThread()).getAndCleanReadLog();
+		return (log != null) ? log : new ReadLog();
 	}
 
-	private final boolean readSetEmpty() {
-		return Options.READMAP ? (readSetMap == null) : (readSet == null);
+	/** Gives the read-set back to the current thread, once the transaction no longer needs it **/
+	private void releaseReadLog() {
+		releaseReaderBit();
+		ReadLog log = readLog;
+		readLog = null;
+		if (log != null && log.recycle()) {
+			((SpeculationTaskWorkerThread) Thread.currentThread()).setReadLog(log);
+		}
 	}
 
 	private final boolean isDummy;
 
+	// Support for -eagerinvalidation
+	// Bit identifying this transaction in the ReaderTable (0 if none was available)
+	private long readerBit;
+	// Set by writers that stored to a location that this transaction may have read
+	private volatile boolean invalidated;
+
+	private void releaseReaderBit() {
+		if (Options.EAGERINVALIDATION && readerBit != 0) {
+			ReaderTable.unregister(readerBit, readLog);
+			readerBit = 0;
+		}
+	}
+
+	void markInvalidated() {
+		invalidated = true;
+	}
+
+	private void eagerValidation() {
+		invalidated = false;
+		if (readLog.validate()) return;
+
+		if (Options.TXABORTSTATS) printStats(true);
+		SpeculationTask.abortDoomedTransaction();
+	}
+
+	// Support for -effectivelyfinal
+	// FieldGuard epoch when the transaction started; if a guard is invalidated after that, reads of the
+	// field that were not logged may have returned stale values
+	private int fieldGuardEpoch;
+
+	private boolean fieldGuardsIntact() {
+		return !Options.EFFECTIVELYFINAL || fieldGuardEpoch == FieldGuard.epoch();
+	}
+
+	// Support for -multiversion
+	// Set once the transaction is committed or aborted, after which its versions are no longer forwarded
+	private volatile boolean finished;
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	private void finish() {
+		finished = true;
+		if (Options.INDYBARRIERS && !isDummy) BarrierSwitch.transactionFinished();
+	}
+
+	/** Marks (instance, offset) as a location to be multi-versioned. Inserted by the transactifier before
+	  * reads of fields tagged with "multiversion:" in the skiplist.
+	  **/
+	public static void markVersioned(Object instance, int offset) {
+		if (Options.MULTIVERSION && current() != null) VersionedValues.markHot(instance, offset);
+	}
+
+	public static void markVersioned(StaticFieldBase sfb, int offset) {
+		markVersioned(sfb._staticFieldBase, offset);
+	}
+
+	/** Returns the version of (instance, offset) forwarded from a previous speculation, if any **/
+	private VersionedValues.Version forwardedVersion(Object instance, long offset) {
+		if (!VersionedValues.isHot(instance, offset)) return null;
+		return VersionedValues.find(speculationTask, instance, offset);
+	}
+
+	private void published(Object instance, long offset, long bits, Object reference, boolean available) {
+		if (VersionedValues.isHot(instance, offset)) {
+			VersionedValues.publish(this, speculationTask, instance, offset, bits, reference, available);
+		}
+	}
+
+	/** Marks the location that failed validation as hot, so that its later writes are forwarded **/
+	private void profileConflict() {
+		int pos = readLog.firstInvalid();
+		if (pos >= 0) VersionedValues.markHot(readLog._instances[pos], readLog._offsets[pos]);
+	}
+
+	// Support for -checkpoints
+	// Reads between checkpoints; as the interval doubles after each checkpoint, a transaction takes only
+	// O(log n) checkpoints, and their cost stays proportional to the work they can save
+	private static final int CHECKPOINT_INTERVAL = 4096;
+	private int nextCheckpoint = CHECKPOINT_INTERVAL;
+
+	/** Takes a checkpoint of the current transaction. Returns false after the checkpoint is taken (or if
+	  * it could not be taken), and true when execution is resumed from the checkpoint.
+	  **/
+	private boolean checkpoint() {
+		int readCount = readLog.size();
+		nextCheckpoint = readCount * 2;
+		// Entries logged so far must stay as they are now, so that the logs can be truncated back
+		// to this point
+		readLog.seal();
+		if (writeSet != null) writeSet.seal();
+		return SpeculationTask.checkpoint(readCount, (writeSet != null) ? writeSet.size() : 0);
+	}
+
 	// Used by clientrt / worklist
 	// Allows adding code that runs on commit (after validation, before writeback)
 	/*
@@ -761,28 +1078,24 @@ public final class Transaction {
 		}*/
 	}
 
-	// Important note:
-	// FieldAccess's equals just compares (instance, offset), so it can be used both as a key and as an
-	// entry -- NOTE THAT JAVA'S HASHMAP IMPLEMENTATION DOES NOT REPLACE KEYS THAT ARE EQUAL: The key is
-	// always the first FieldAccess that was inserted. Only the mapped value changes with further writes
-	// to the same field. To access the CORRECT writeSet, always iterate over writeSet.values(),
-	// iterating over keySet() YIELDS WRONG VALUES.
-	private HashMap<FieldAccess,FieldAccess> writeSet;
+	// Write-set, lazily borrowed from the current worker thread on the first write (see releaseReadLog()
+	// for the ownership rules, which are the same as for the read-set)
+	private WriteSet writeSet;
 
 	public boolean validate() {
 		boolean result = validateTx();
+		if (!result && Options.MULTIVERSION && !readSetEmpty()) profileConflict();
 		if (!result && Options.TXABORTSTATS) printStats(true);
 		return result;
 	}
 
 	private boolean validateTx() {
+		if (!fieldGuardsIntact()) return false;
+
 		// Validate transaction
 		if (!readSetEmpty()) {
-			int count = 0;
-			for (FieldAccess entry : readSetIterator()) {
-				if (!entry.validate()) return false;
-				count++;
-			}
+			if (!ParallelCommit.validate(readLog)) return false;
+			int count = readLog.size();
 			if (!Options.FASTMODE && count > 1000) {
 				Log.debug("Committing Tx with huge readset ({} entries)", count);
 			}
@@ -803,76 +1116,475 @@ public final class Transaction {
 
 		//if (commitAction != null) commitAction.runActions();
 
+		// New -orecs epoch, so that versions stamped before this commit can be trusted by later reads
+		if (Options.ORECS) OrecTable.advance();
+
 		// Perform writeback
 		if (writeSet != null) {
 			if (!Options.FASTMODE && writeSet.size() > 1000) {
 				Log.debug("Committing Tx with huge writeset ({} entries)", writeSet.size());
 			}
-			for (FieldAccess entry : writeSet.values()) {
-				entry.writeback();
-			}
+			ParallelCommit.writeback(writeSet);
 		}
 
 		if (Options.TXSTATS) printStats(false);
 
+		finish();
+		releaseReadLog();
+		releaseWriteSet();
+
 		return true;
 	}
 
-	protected FieldAccess tmRead(FieldAccess fieldRead) {
-		FieldAccess value = null;
+	// Typed read barriers: values written by the transaction are returned from the write-set, other
+	// values are logged in the read-set. With -checkpoints, a checkpoint may be taken before logging
+	// the read; if execution later resumes from it, the transaction was already committed up to that
+	// point, and the barrier just returns the current value from memory.
+	private Object tmReadObject(Object instance, long offset, Object value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getObject(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = writeSet.reference(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = v._reference;
+			}
+			if (!readLog.logObject(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
 
-		// Check writeSet for field
-		if (writeSet != null) {
-			value = writeSet.get(fieldRead);
-			// Resolve Future, if any
-			if (value != null) value = value.nativeFieldAccess();
-		}
-
-		if (value == null) {
-			value = fieldRead;
-
-			if (!Options.READMAP) {	// Read-set as linked-list
-				fieldRead._next = readSet;
-				readSet = fieldRead;
-			} else {			// Read-set as hashmap
-				if (readSetMap == null) readSetMap = new HashMap<FieldAccess,FieldAccess>();
-
-				FieldAccess oldAccess = readSetMap.put(fieldRead, fieldRead);
-				// Validate that oldAccess is still the same as fieldRead, otherwise one of them
-				// was invalid and the transaction is doomed to fail
-				if (oldAccess != null && !oldAccess.valueEquals(fieldRead)) {
-					if (Options.TXABORTSTATS) printStats(true);
-					SpeculationTask.waitCurrentTransactionCommit(true);
-				}
+	private boolean tmReadBoolean(Object instance, long offset, boolean value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getBoolean(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = writeSet.value(written) != 0;
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = v._bits != 0;
+			}
+			if (!readLog.logBoolean(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
 
-				// Don't let the read-set get carried away
-				if (readSetMap.size() > 100000) {
-					SpeculationTask.waitCurrentTransactionCommit();
-				}
+	private byte tmReadByte(Object instance, long offset, byte value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getByte(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = (byte) writeSet.value(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = (byte) v._bits;
+			}
+			if (!readLog.logByte(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private char tmReadChar(Object instance, long offset, char value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getChar(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = (char) writeSet.value(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = (char) v._bits;
 			}
+			if (!readLog.logChar(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
 		}
+		checkEarlyCommit();
+		return value;
+	}
 
-		if (Options.SIGNALEARLYCOMMIT && speculationTask.canCommit()) {
-			SpeculationTask.waitCurrentTransactionCommit();
+	private double tmReadDouble(Object instance, long offset, double value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getDouble(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = Double.longBitsToDouble(writeSet.value(written));
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = Double.longBitsToDouble(v._bits);
+			}
+			if (!readLog.logDouble(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private float tmReadFloat(Object instance, long offset, float value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getFloat(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = Float.intBitsToFloat((int) writeSet.value(written));
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = Float.intBitsToFloat((int) v._bits);
+			}
+			if (!readLog.logFloat(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private int tmReadInt(Object instance, long offset, int value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getInt(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = (int) writeSet.value(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = (int) v._bits;
+			}
+			if (!readLog.logInt(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private long tmReadLong(Object instance, long offset, long value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getLong(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = writeSet.value(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = v._bits;
+			}
+			if (!readLog.logLong(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private short tmReadShort(Object instance, long offset, short value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) return UNSAFE.getShort(instance, offset);
+		int written = writeSetFind(instance, offset);
+		if (written >= 0) {
+			value = (short) writeSet.value(written);
+		} else {
+			if (Options.MULTIVERSION) {
+				VersionedValues.Version v = forwardedVersion(instance, offset);
+				if (v != null) value = (short) v._bits;
+			}
+			if (!readLog.logShort(instance, offset, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) ReaderTable.addReader(instance, offset, readerBit);
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	/** Returns the position of the write-set entry for the given field, or -1 if it was not written **/
+	private int writeSetFind(Object instance, long offset) {
+		return (writeSet != null) ? writeSet.find(instance, offset) : -1;
+	}
+
+	// The same location was read twice with different values, so one of them was invalid and the
+	// transaction is doomed to fail
+	private void readSetConflict() {
+		if (Options.TXABORTSTATS) printStats(true);
+		SpeculationTask.waitCurrentTransactionCommit(true);
+	}
+
+	// Number of barriers between checks done by -incrementalvalidation
+	private static final int VALIDATION_INTERVAL = 1024;
+	private int barriersUntilValidation = VALIDATION_INTERVAL;
+
+	private void incrementalValidation() {
+		barriersUntilValidation = VALIDATION_INTERVAL;
+		if (readSetEmpty() || readLog.validateIncremental()) return;
+
+		if (Options.TXABORTSTATS) printStats(true);
+		SpeculationTask.abortDoomedTransaction();
+	}
+
+	// Number of barriers until the next check for an early commit, with -earlycommitinterval
+	private int barriersUntilEarlyCommit = Options.EARLYCOMMITINTERVAL;
+
+	private void checkEarlyCommit() {
+		if (Options.INCREMENTALVALIDATION && --barriersUntilValidation == 0) incrementalValidation();
+		if (Options.EAGERINVALIDATION && invalidated) eagerValidation();
+		if (!Options.SIGNALEARLYCOMMIT) return;
+		if (Options.EARLYCOMMITINTERVAL == 1) {
+			if (speculationTask.canCommit()) SpeculationTask.waitCurrentTransactionCommit();
+		} else if (--barriersUntilEarlyCommit == 0) {
+			// Only this counter is touched by most barriers, the SpeculationTask is only read here
+			barriersUntilEarlyCommit = Options.EARLYCOMMITINTERVAL;
+			if (speculationTask.canCommit()) SpeculationTask.waitCurrentTransactionCommit();
+		}
+	}
+
+	// Typed write barriers
+	private void tmWriteObject(Object instance, long offset, Object value) {
+		writeSet().putObject(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, 0, value, true);
+		afterWrite();
+	}
+
+	private void tmWriteBoolean(Object instance, long offset, boolean value) {
+		writeSet().putBoolean(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value ? 1 : 0, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteByte(Object instance, long offset, byte value) {
+		writeSet().putByte(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteChar(Object instance, long offset, char value) {
+		writeSet().putChar(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteDouble(Object instance, long offset, double value) {
+		writeSet().putDouble(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, Double.doubleToRawLongBits(value), null, true);
+		afterWrite();
+	}
+
+	private void tmWriteFloat(Object instance, long offset, float value) {
+		writeSet().putFloat(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, Float.floatToRawIntBits(value), null, true);
+		afterWrite();
+	}
+
+	private void tmWriteInt(Object instance, long offset, int value) {
+		writeSet().putInt(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteLong(Object instance, long offset, long value) {
+		writeSet().putLong(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteShort(Object instance, long offset, short value) {
+		writeSet().putShort(instance, offset, value);
+		if (Options.MULTIVERSION) published(instance, offset, value, null, true);
+		afterWrite();
+	}
+
+	private void tmWriteFuture(Object instance, long offset, Future<?> future, byte type) {
+		writeSet().putFuture(instance, offset, future, type);
+		if (Options.MULTIVERSION) published(instance, offset, 0, null, false);
+		afterWrite();
+	}
+
+	// Array element barriers: these work like the typed read/write barriers, but allow the logs to coalesce
+	// accesses to consecutive elements into range entries
+	private Object tmArrayReadObject(Object array, int pos, Object value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getObject(array, AccessLog.elementOffset(AccessLog.OBJECT, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.OBJECT, pos) : -1;
+		if (written >= 0) {
+			value = writeSet.elementReference(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.OBJECT, pos, 0, value)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.OBJECT, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private boolean tmArrayReadBoolean(Object array, int pos, boolean value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getBoolean(array, AccessLog.elementOffset(AccessLog.BOOLEAN, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.BOOLEAN, pos) : -1;
+		if (written >= 0) {
+			value = writeSet.elementValue(written, pos) != 0;
+		} else {
+			if (!readLog.logElement(array, AccessLog.BOOLEAN, pos, value ? 1 : 0, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.BOOLEAN, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private byte tmArrayReadByte(Object array, int pos, byte value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getByte(array, AccessLog.elementOffset(AccessLog.BYTE, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.BYTE, pos) : -1;
+		if (written >= 0) {
+			value = (byte) writeSet.elementValue(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.BYTE, pos, value, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.BYTE, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private char tmArrayReadChar(Object array, int pos, char value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getChar(array, AccessLog.elementOffset(AccessLog.CHAR, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.CHAR, pos) : -1;
+		if (written >= 0) {
+			value = (char) writeSet.elementValue(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.CHAR, pos, value, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.CHAR, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private double tmArrayReadDouble(Object array, int pos, double value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getDouble(array, AccessLog.elementOffset(AccessLog.DOUBLE, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.DOUBLE, pos) : -1;
+		if (written >= 0) {
+			value = Double.longBitsToDouble(writeSet.elementValue(written, pos));
+		} else {
+			if (!readLog.logElement(array, AccessLog.DOUBLE, pos, Double.doubleToRawLongBits(value), null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.DOUBLE, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private float tmArrayReadFloat(Object array, int pos, float value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getFloat(array, AccessLog.elementOffset(AccessLog.FLOAT, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.FLOAT, pos) : -1;
+		if (written >= 0) {
+			value = Float.intBitsToFloat((int) writeSet.elementValue(written, pos));
+		} else {
+			if (!readLog.logElement(array, AccessLog.FLOAT, pos, Float.floatToRawIntBits(value), null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.FLOAT, pos), readerBit);
+			}
 		}
+		checkEarlyCommit();
+		return value;
+	}
 
+	private int tmArrayReadInt(Object array, int pos, int value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getInt(array, AccessLog.elementOffset(AccessLog.INT, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.INT, pos) : -1;
+		if (written >= 0) {
+			value = (int) writeSet.elementValue(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.INT, pos, value, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.INT, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
 		return value;
 	}
 
-	protected void tmWrite(FieldAccess fieldWrite) {
-		if (writeSet == null) {
-			writeSet = new HashMap<FieldAccess,FieldAccess>();
+	private long tmArrayReadLong(Object array, int pos, long value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getLong(array, AccessLog.elementOffset(AccessLog.LONG, pos));
 		}
-		writeSet.put(fieldWrite, fieldWrite);
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.LONG, pos) : -1;
+		if (written >= 0) {
+			value = writeSet.elementValue(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.LONG, pos, value, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.LONG, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
 
+	private short tmArrayReadShort(Object array, int pos, short value) {
+		if (Options.CHECKPOINTS && readLog.size() >= nextCheckpoint && checkpoint()) {
+			return UNSAFE.getShort(array, AccessLog.elementOffset(AccessLog.SHORT, pos));
+		}
+		int written = (writeSet != null) ? writeSet.findElement(array, AccessLog.SHORT, pos) : -1;
+		if (written >= 0) {
+			value = (short) writeSet.elementValue(written, pos);
+		} else {
+			if (!readLog.logElement(array, AccessLog.SHORT, pos, value, null)) readSetConflict();
+			if (Options.EAGERINVALIDATION && readerBit != 0) {
+				ReaderTable.addReader(array, AccessLog.elementOffset(AccessLog.SHORT, pos), readerBit);
+			}
+		}
+		checkEarlyCommit();
+		return value;
+	}
+
+	private void tmArrayWrite(Object array, byte type, int pos, long bits, Object reference) {
+		writeSet().putElement(array, type, pos, bits, reference);
+		afterWrite();
+	}
+
+	private void tmArrayWriteFuture(Object array, byte type, int pos, Future<?> future) {
+		writeSet().putElementFuture(array, type, pos, future);
+		afterWrite();
+	}
+
+	private WriteSet writeSet() {
+		WriteSet ws = writeSet;
+		if (ws == null) {
+			ws = ((SpeculationTaskWorkerThread) Thread.currentThread()).getAndCleanWriteSet();
+			if (ws == null) ws = new WriteSet();
+			writeSet = ws;
+		}
+		return ws;
+	}
+
+	/** Gives the write-set back to the current thread, once the transaction no longer needs it **/
+	private void releaseWriteSet() {
+		WriteSet ws = writeSet;
+		writeSet = null;
+		if (ws != null && ws.recycle()) {
+			((SpeculationTaskWorkerThread) Thread.currentThread()).setWriteSet(ws);
+		}
+	}
+
+	private void afterWrite() {
 		// TODO: HACK, mas a ideia base é interessante... Como obter algo semelhante que não seja tão hackish?
 		if (Options.WSSIZEHACK && writeSet.size() > 1000) {
 			SpeculationTask.waitCurrentTransactionCommit();
 		}
 
-		if (Options.SIGNALEARLYCOMMIT && speculationTask.canCommit()) {
-			SpeculationTask.waitCurrentTransactionCommit();
-		}
+		checkEarlyCommit();
 	}
 
 	private static String offsetToFieldName(Class<?> cls, Long offset) {
@@ -970,8 +1682,11 @@ public final class Transaction {
 			" Transaction Statistics for " + this + " (host " + Thread.currentThread() + ")");
 		if (speculationTask != null) output.append("\n\tSource: " + speculationTask);
 
-		if (!readSetEmpty()) buildStats(readSetIterator(), "Read", output, aborted);
-		if (writeSet != null) buildStats(writeSet.values(), "Write", output, false);
+		if (!readSetEmpty()) {
+			buildStats(readLog.entries(), "Read", output, aborted);
+			if (readLog.isIndexed()) output.append("\n\t(Read-set was indexed)");
+		}
+		if (writeSet != null) buildStats(writeSet.entries(), "Write", output, false);
 		if (Options.NTTRACKER && nonTransStateTracker != null) nonTransStateTracker.printTxStats(output);
 
 		Log.info(output.toString());
@@ -0,0 +1,135 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.stm;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jaspex.speculation.nsruntime.SpeculationTask;
+
+/** Multi-version values for hot locations, used by -multiversion.
+  *
+  * Locations that are written by one speculation and read by the speculations that follow it make the
+  * readers fail validation, as they read memory before the writer commits. For hot locations
+  * (fields tagged with "multiversion:" in the skiplist, or locations that caused a validation failure)
+  * every speculative write also publishes a version tagged with the writing task, and a speculative
+  * read takes the value written by its nearest predecessor in program order that is still speculating,
+  * instead of the one in memory.
+  *
+  * A forwarded value is logged in the read-set as usual, so if the predecessor later writes something
+  * else (or aborts), the reader just fails validation; forwarding never affects correctness.
+  **/
+final class VersionedValues {
+
+	private static final int STRIPES = 1 << 12;
+	private static final int STRIPE_MASK = STRIPES - 1;
+	private static final int LOCKS = 64;
+	// How far back in program order to look for a version
+	private static final int MAX_DEPTH = 8;
+
+	/** Immutable version record; each stripe keeps a list of them, replaced on every publish **/
+	static final class Version {
+		final Object _instance;
+		final long _offset;
+		final Transaction _writer;
+		final SpeculationTask _task;
+		final long _bits;
+		final Object _reference;
+		// False if the value written was a Future, which cannot be forwarded
+		final boolean _available;
+		final Version _next;
+
+		Version(Object instance, long offset, Transaction writer, SpeculationTask task, long bits,
+			Object reference, boolean available, Version next) {
+			_instance = instance;
+			_offset = offset;
+			_writer = writer;
+			_task = task;
+			_bits = bits;
+			_reference = reference;
+			_available = available;
+			_next = next;
+		}
+
+		private Version withNext(Version next) {
+			return new Version(_instance, _offset, _writer, _task, _bits, _reference, _available, next);
+		}
+	}
+
+	// Set without synchronization; a stripe is never unmarked
+	private static final boolean[] _hot = new boolean[STRIPES];
+	private static final AtomicReferenceArray<Version> _versions = new AtomicReferenceArray<Version>(STRIPES);
+	private static final Object[] _locks = new Object[LOCKS];
+
+	static {
+		for (int i = 0; i < LOCKS; i++) _locks[i] = new Object();
+	}
+
+	private VersionedValues() { }
+
+	private static int stripe(Object instance, long offset) {
+		return AccessLog.hash(instance, offset) & STRIPE_MASK;
+	}
+
+	static boolean isHot(Object instance, long offset) {
+		return _hot[stripe(instance, offset)];
+	}
+
+	static void markHot(Object instance, long offset) {
+		int stripe = stripe(instance, offset);
+		if (!_hot[stripe]) _hot[stripe] = true;
+	}
+
+	/** Publishes a value written by writer, replacing its previous version for the same location, and
+	  * dropping the versions of transactions that are already finished
+	  **/
+	static void publish(Transaction writer, SpeculationTask task, Object instance, long offset, long bits,
+		Object reference, boolean available) {
+		int stripe = stripe(instance, offset);
+		synchronized (_locks[stripe & (LOCKS - 1)]) {
+			Version list = null;
+			for (Version v = _versions.get(stripe); v != null; v = v._next) {
+				if (v._writer.isFinished()) continue;
+				if (v._writer == writer && v._instance == instance && v._offset == offset) continue;
+				list = v.withNext(list);
+			}
+			_versions.set(stripe, new Version(instance, offset, writer, task, bits, reference, available, list));
+		}
+	}
+
+	/** Returns the version to be read by a speculation of task, or null if memory should be read instead **/
+	static Version find(SpeculationTask task, Object instance, long offset) {
+		Version head = _versions.get(stripe(instance, offset));
+		if (head == null) return null;
+
+		SpeculationTask predecessor = task.predecessor();
+		for (int depth = 0; predecessor != null && depth < MAX_DEPTH; depth++) {
+			for (Version v = head; v != null; v = v._next) {
+				if (v._task == predecessor && v._instance == instance && v._offset == offset &&
+					!v._writer.isFinished()) {
+					return v._available ? v : null;
+				}
+			}
+			predecessor = predecessor.predecessor();
+		}
+		return null;
+	}
+}
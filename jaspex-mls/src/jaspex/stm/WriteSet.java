@@ -0,0 +1,358 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.stm;
+
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
+import jaspex.Options;
+
+/** Transaction write-set.
+  *
+  * Entries are kept densely in insertion order (so writeback just walks the arrays), and indexed by
+  * an open-addressing hash table keyed on (instance identity, offset). The table stores entry
+  * positions + 1, with 0 marking empty slots.
+  *
+  * A small Bloom filter sits in front of the table: most reads done by a transaction are of
+  * locations it never wrote, and for those the filter usually answers without probing the table.
+  *
+  * Array element writes can be coalesced into range entries (see AccessLog). As ranges are only
+  * indexed by their first element, the ranges of each array are also chained from a second table
+  * (_rangeHeads). An array-level key is added to the Bloom filter for every array with written elements.
+  *
+  * A location may have more than one entry (an element of a range can be shadowed by a later single
+  * entry holding a Future, and with -checkpoints entries sealed by a checkpoint are shadowed by later
+  * writes), in which case the entry with the highest position is the current one.
+  *
+  * Like ReadLogs, WriteSets are owned by SpeculationTaskWorkerThreads and recycled between transactions.
+  **/
+public final class WriteSet extends AccessLog {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Bloom filter with 512 bits, 2 bits set per entry
+	private static final int BLOOM_WORDS = 8;
+	private static final int BLOOM_MASK = BLOOM_WORDS * 64 - 1;
+
+	// Offset used for the array-level Bloom filter key (never a valid element offset)
+	private static final long ARRAY_KEY = -1;
+	private static final int RANGE_HEADS_CAPACITY = 16;
+
+	private final long[] _bloom = new long[BLOOM_WORDS];
+	private int[] _table;
+	// Open-addressing table mapping each array with ranges to its most recently created range entry
+	private int[] _rangeHeads = new int[RANGE_HEADS_CAPACITY];
+	private int _rangeArrays;
+	// Entries before this position were sealed by a checkpoint (-checkpoints), and must not be changed:
+	// later writes to the same locations add new entries that shadow them
+	private int _sealed;
+	// Set when some location may have more than one entry, or some entry holds a Future; either
+	// prevents the writeback from being split across threads (see ParallelCommit)
+	private boolean _orderedWriteback;
+
+	WriteSet() {
+		super(INITIAL_CAPACITY);
+		_table = new int[INITIAL_CAPACITY * 2];
+	}
+
+	private boolean bloomMightContain(int h) {
+		int b1 = h & BLOOM_MASK;
+		int b2 = (h >>> 9) & BLOOM_MASK;
+		return ((_bloom[b1 >>> 6] & (1L << b1)) != 0) && ((_bloom[b2 >>> 6] & (1L << b2)) != 0);
+	}
+
+	private void bloomAdd(int h) {
+		int b1 = h & BLOOM_MASK;
+		int b2 = (h >>> 9) & BLOOM_MASK;
+		_bloom[b1 >>> 6] |= 1L << b1;
+		_bloom[b2 >>> 6] |= 1L << b2;
+	}
+
+	/** Returns the table slot for (instance, offset): either the one containing it, or the empty
+	  * slot where it should be inserted.
+	  **/
+	private int probe(Object instance, long offset, int h) {
+		int[] table = _table;
+		int mask = table.length - 1;
+		int slot = h & mask;
+		while (true) {
+			int entry = table[slot] - 1;
+			if (entry < 0 || (_instances[entry] == instance && _offsets[entry] == offset)) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/** Returns the position of the entry for (instance, offset), or -1 if the location was not written **/
+	int find(Object instance, long offset) {
+		int h = hash(instance, offset);
+		if (!bloomMightContain(h)) return -1;
+		return _table[probe(instance, offset, h)] - 1;
+	}
+
+	/** Returns the position of the entry for (instance, offset), adding a new one if needed **/
+	private int findOrAdd(Object instance, long offset, byte type) {
+		int h = hash(instance, offset);
+		int slot = probe(instance, offset, h);
+		int entry = _table[slot] - 1;
+		if (entry >= _sealed && !isRange(entry)) {
+			_types[entry] = type;
+			_references[entry] = null;
+			return entry;
+		}
+
+		// Add a new entry. If the location already had one (a sealed entry, or a range starting at it),
+		// the new entry shadows it.
+		boolean newKey = (entry < 0);
+		if (!newKey) _orderedWriteback = true;
+		entry = append(instance, offset, type);
+		_table[slot] = entry + 1;
+		bloomAdd(h);
+		// Keep load factor <= 0.5
+		if (newKey && _size * 2 > _table.length) rehash();
+		return entry;
+	}
+
+	private void rehash() {
+		int[] table = new int[_table.length * 2];
+		int mask = table.length - 1;
+		for (int i = 0; i < _size; i++) {
+			Object instance = _instances[i];
+			long offset = _offsets[i];
+			int slot = hash(instance, offset) & mask;
+			while (table[slot] != 0) {
+				// Shadowed entries share their key with a later entry, which must win
+				int entry = table[slot] - 1;
+				if (_instances[entry] == instance && _offsets[entry] == offset) break;
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+		_table = table;
+	}
+
+	// Array element support
+
+	/** Returns the slot in _rangeHeads for array: either the one containing it, or an empty one **/
+	private int rangeHeadSlot(Object array, int h) {
+		int mask = _rangeHeads.length - 1;
+		int slot = h & mask;
+		while (true) {
+			int entry = _rangeHeads[slot] - 1;
+			if (entry < 0 || _instances[entry] == array) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/** Conservatively checks if any element of array may have been written (false positives are possible) **/
+	boolean mayHaveElements(Object array) {
+		return bloomMightContain(hash(array, ARRAY_KEY));
+	}
+
+	@Override
+	void rangeCreated(int pos, ArrayRange range) {
+		Object array = _instances[pos];
+		int h = hash(array, ARRAY_KEY);
+		int slot = rangeHeadSlot(array, h);
+		if (_rangeHeads[slot] == 0) {
+			bloomAdd(h);
+			if (++_rangeArrays * 2 > _rangeHeads.length) {
+				int[] oldHeads = _rangeHeads;
+				_rangeHeads = new int[oldHeads.length * 2];
+				for (int head : oldHeads) {
+					if (head != 0) _rangeHeads[rangeHeadSlot(_instances[head - 1], hash(_instances[head - 1], ARRAY_KEY))] = head;
+				}
+				slot = rangeHeadSlot(array, h);
+			}
+		}
+		range._previous = _rangeHeads[slot] - 1;
+		_rangeHeads[slot] = pos + 1;
+	}
+
+	/** Returns the position of the current entry for the element at index of array (which may be a range
+	  * entry), or -1 if the element was not written
+	  **/
+	int findElement(Object array, byte type, int index) {
+		int found = find(array, elementOffset(type, index));
+		if (_rangeArrays == 0) return found;
+
+		int h = hash(array, ARRAY_KEY);
+		if (!bloomMightContain(h)) return found;
+		for (int pos = _rangeHeads[rangeHeadSlot(array, h)] - 1; pos >= 0; pos = range(pos)._previous) {
+			// Ranges never overlap, so at most one can contain the element
+			if (range(pos).contains(index)) return Math.max(pos, found);
+		}
+		return found;
+	}
+
+	// Accessors for the value of the element at index, from entry pos returned by findElement()
+	long elementValue(int pos, int index) {
+		return isRange(pos) ? range(pos).bits(index) : value(pos);
+	}
+
+	Object elementReference(int pos, int index) {
+		return isRange(pos) ? range(pos).reference(index) : reference(pos);
+	}
+
+	void putElement(Object array, byte type, int index, long bits, Object reference) {
+		int pos = findElement(array, type, index);
+		if (pos >= 0 && pos >= _sealed) {
+			// Update the current entry in place
+			if (isRange(pos)) {
+				range(pos).set(index, bits, reference);
+			} else {
+				_types[pos] = type;
+				_values[pos] = bits;
+				_references[pos] = reference;
+			}
+			return;
+		}
+
+		int open = (pos < 0) ? openEntryEndingAt(array, type, index) : -1;
+		if (open >= 0) {
+			extendRange(open, index, bits, reference);
+			return;
+		}
+
+		// New entry (which may shadow a sealed one)
+		if (pos >= 0) _orderedWriteback = true;
+		pos = findOrAdd(array, elementOffset(type, index), type);
+		_values[pos] = bits;
+		_references[pos] = reference;
+		openEntry(pos);
+		bloomAdd(hash(array, ARRAY_KEY));
+	}
+
+	/** Adds a write range with the values in source. The array must not have any other entries (see
+	  * mayHaveElements()).
+	  **/
+	void putRange(Object array, int from, ArrayRange source) {
+		byte type = source._type;
+		int pos = findOrAdd(array, elementOffset(type, from), (byte) (type | RANGE));
+		ArrayRange range = new ArrayRange(type, from, source._buffer, 0, source._count);
+		_references[pos] = range;
+		rangeCreated(pos, range);
+		openEntry(pos);
+	}
+
+	void putElementFuture(Object array, byte type, int index, Future<?> future) {
+		// Ranges cannot hold Futures, so if the element is part of a range, findOrAdd() adds a new
+		// entry that shadows it
+		putFuture(array, elementOffset(type, index), future, type);
+		bloomAdd(hash(array, ARRAY_KEY));
+	}
+
+	@Override
+	void seal() {
+		super.seal();
+		_sealed = _size;
+	}
+
+	void putObject(Object instance, long offset, Object value) {
+		_references[findOrAdd(instance, offset, OBJECT)] = value;
+	}
+
+	void putBoolean(Object instance, long offset, boolean value) {
+		_values[findOrAdd(instance, offset, BOOLEAN)] = value ? 1 : 0;
+	}
+
+	void putByte(Object instance, long offset, byte value) {
+		_values[findOrAdd(instance, offset, BYTE)] = value;
+	}
+
+	void putChar(Object instance, long offset, char value) {
+		_values[findOrAdd(instance, offset, CHAR)] = value;
+	}
+
+	void putDouble(Object instance, long offset, double value) {
+		_values[findOrAdd(instance, offset, DOUBLE)] = Double.doubleToRawLongBits(value);
+	}
+
+	void putFloat(Object instance, long offset, float value) {
+		_values[findOrAdd(instance, offset, FLOAT)] = Float.floatToRawIntBits(value);
+	}
+
+	void putInt(Object instance, long offset, int value) {
+		_values[findOrAdd(instance, offset, INT)] = value;
+	}
+
+	void putLong(Object instance, long offset, long value) {
+		_values[findOrAdd(instance, offset, LONG)] = value;
+	}
+
+	void putShort(Object instance, long offset, short value) {
+		_values[findOrAdd(instance, offset, SHORT)] = value;
+	}
+
+	void putFuture(Object instance, long offset, Future<?> future, byte type) {
+		_references[findOrAdd(instance, offset, (byte) (type | FUTURE))] = future;
+		_orderedWriteback = true;
+	}
+
+	// Accessors for the value of entry pos; Futures are resolved on first access
+	long value(int pos) {
+		if ((_types[pos] & FUTURE) != 0) resolveFuture(pos);
+		return _values[pos];
+	}
+
+	Object reference(int pos) {
+		if ((_types[pos] & FUTURE) != 0) resolveFuture(pos);
+		return _references[pos];
+	}
+
+	void writeback() {
+		writeback(0, _size);
+	}
+
+	/** Writes back only the entries in [from, to) (used by ParallelCommit) **/
+	void writeback(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((_types[i] & FUTURE) != 0) resolveFuture(i);
+			storeToMemory(i);
+			if (Options.ORECS) OrecTable.written(this, i);
+			if (Options.EAGERINVALIDATION) ReaderTable.invalidate(this, i);
+		}
+	}
+
+	/** Checks if disjoint parts of the write-set can be written back concurrently, in any order: this
+	  * needs every location to have a single entry (so no write can be overwritten by an older one)
+	  * and no Futures (which must be resolved by the committing thread).
+	  **/
+	boolean canWritebackOutOfOrder() {
+		return !_orderedWriteback;
+	}
+
+	@Override
+	boolean recycle() {
+		if (!super.recycle()) return false;
+		// Don't let a big table slow down the recycling of every transaction that follows
+		if (_table.length > INITIAL_CAPACITY * 16) _table = new int[INITIAL_CAPACITY * 2];
+		else Arrays.fill(_table, 0);
+		Arrays.fill(_bloom, 0);
+		_sealed = 0;
+		_orderedWriteback = false;
+		if (_rangeArrays > 0) {
+			if (_rangeHeads.length > RANGE_HEADS_CAPACITY) _rangeHeads = new int[RANGE_HEADS_CAPACITY];
+			else Arrays.fill(_rangeHeads, 0);
+			_rangeArrays = 0;
+		}
+		return true;
+	}
+}
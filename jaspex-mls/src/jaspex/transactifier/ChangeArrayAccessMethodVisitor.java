@@ -36,6 +36,8 @@ public class ChangeArrayAccessMethodVisitor extends MethodVisitor {
 
 	private final AnalyzerAdapter _analyzerAdapter;
 	private final boolean _active;
+	// Próximo acesso ao array é a um array local (marcado pelo EscapeAnalysisMethodVisitor)
+	private boolean _localAccess;
 
 	public ChangeArrayAccessMethodVisitor(int access, String name, String desc, String signature,
 		String[] exceptions, ClassVisitor cv, InfoClass currentClass, Boolean JDKClass) {
@@ -47,7 +49,11 @@ public class ChangeArrayAccessMethodVisitor extends MethodVisitor {
 
 	@Override
 	public void visitInsn(int opcode) {
-		if (!_active) { mv.visitInsn(opcode); return; }
+		if (!_active || _localAccess) {
+			_localAccess = false;
+			mv.visitInsn(opcode);
+			return;
+		}
 
 		switch (opcode) {
 			// Array loads
@@ -91,6 +97,15 @@ public class ChangeArrayAccessMethodVisitor extends MethodVisitor {
 		}
 	}
 
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+		if (owner.equals(CommonTypes.MARKER_LOCALACCESS) && name.equals("array")) {
+			_localAccess = true;
+			return;
+		}
+		mv.visitMethodInsn(opcode, owner, name, desc);
+	}
+
 	private void arrayLoad(Type t) {
 		mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "arrayLoad" + getName(t),
 			"([" + t.bytecodeName() + "I)" + t.bytecodeName());
@@ -27,6 +27,7 @@ import jaspex.Options;
 import jaspex.speculation.CommonTypes;
 import jaspex.speculation.newspec.SpeculationSkiplist;
 import jaspex.stm.ExternalAccessHelper;
+import jaspex.stm.FieldGuard;
 
 import org.objectweb.asm.*;
 import org.slf4j.Logger;
@@ -43,6 +44,9 @@ public class ChangeFieldAccessMethodVisitor extends MethodVisitor {
 
 	private final InfoClass _currentClass;
 	private final boolean _active;
+	private final boolean _constructor;
+	// Próximo GETFIELD/PUTFIELD acede a um objecto local (marcado pelo EscapeAnalysisMethodVisitor)
+	private boolean _localAccess;
 
 	public ChangeFieldAccessMethodVisitor(int access, String name, String desc, String signature,
 		String[] exceptions, ClassVisitor cv, InfoClass currentClass, Boolean JDKClass) {
@@ -54,12 +58,28 @@ public class ChangeFieldAccessMethodVisitor extends MethodVisitor {
 		// abort da transacção que acidentalmente tinha feito o trigger do <clinit>. Nenhuma das duas
 		// opções é solução, mas talvez esta seja mais "prática".
 		_active = !(name.equals("<clinit>") /*&& JDKClass*/);
+		_constructor = name.equals("<init>");
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+		if (owner.equals(CommonTypes.MARKER_LOCALACCESS) && name.equals("field")) {
+			_localAccess = true;
+			return;
+		}
+		mv.visitMethodInsn(opcode, owner, name, desc);
 	}
 
 	@Override
 	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
 		if (!_active) { mv.visitFieldInsn(opcode, owner, name, desc); return; }
 
+		if (_localAccess) {
+			_localAccess = false;
+			mv.visitFieldInsn(opcode, owner, name, desc);
+			return;
+		}
+
 		Type ownerClass = Type.fromAsm(owner);
 		// Classe que contém o StaticFieldBase e os offsets
 		Type offsetAccessClass = ownerClass;
@@ -101,6 +121,22 @@ public class ChangeFieldAccessMethodVisitor extends MethodVisitor {
 			offsetAccessClass = ExternalAccessHelper.typeToExternalAccess(targetField.infoClass().type());
 		}
 
+		// Fields que só são escritos durante a sua inicialização (-effectivelyfinal)
+		Type declaringClass = targetField.infoClass().type();
+		boolean effectivelyFinal = Options.EFFECTIVELYFINAL && ClassFilter.isTransactifiable(declaringClass) &&
+			EffectivelyFinalFields.isEffectivelyFinal(declaringClass, name);
+
+		// Tal como para fields final, a inicialização é feita directamente, para que as leituras que
+		// não passam pelo read-set a vejam logo
+		if (effectivelyFinal && opcode == PUTFIELD && _constructor && declaringClass.equals(_currentClass.type())) {
+			mv.visitFieldInsn(opcode, owner, name, desc);
+			return;
+		}
+
+		// Fields com a tag multiversion na SpeculationSkiplist (-multiversion)
+		boolean multiVersion = !effectivelyFinal && Options.MULTIVERSION &&
+			SpeculationSkiplist.multiVersionField(ownerClass, name, fieldType);
+
 		if (opcode == PUTFIELD) {
 			// Avisar o DelayGetFutureMethodVisitor que isto é um store inlined
 			mv.visitMethodInsn(INVOKESTATIC, CommonTypes.MARKER_BEFOREINLINEDSTORE, "normalStoreDummy", "()V");
@@ -110,11 +146,24 @@ public class ChangeFieldAccessMethodVisitor extends MethodVisitor {
 			mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "store" + simpleTypeName,
 					"(" + Type.OBJECT.bytecodeName() + simpleType.bytecodeName() + "J)V");
 		} else if (opcode == GETFIELD) {
+			if (multiVersion) {
+				// Marcar a posição como multi-versioned antes da leitura
+				mv.visitInsn(DUP);
+				mv.visitFieldInsn(GETSTATIC, offsetAccessClass.asmName(), "$offset_" + name, "I");
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "markVersioned",
+						"(" + Type.OBJECT.bytecodeName() + "I)V");
+			}
 			mv.visitInsn(DUP);
 			mv.visitFieldInsn(GETFIELD, ownerClass.asmName(), name, desc);
 			mv.visitFieldInsn(GETSTATIC, offsetAccessClass.asmName(), "$offset_" + name, "I");
-			mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "load" + simpleTypeName,
+			if (effectivelyFinal) {
+				mv.visitIntInsn(SIPUSH, FieldGuard.guard(declaringClass.asmName(), name));
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "loadImmutable" + simpleTypeName,
+					"(" + Type.OBJECT.bytecodeName() + simpleType.bytecodeName() + "II)" + simpleType.bytecodeName());
+			} else {
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "load" + simpleTypeName,
 					"(" + Type.OBJECT.bytecodeName() + simpleType.bytecodeName() + "I)" + simpleType.bytecodeName());
+			}
 			if (!fieldType.isPrimitive()) mv.visitTypeInsn(CHECKCAST, fieldType.asmName());
 		} else if (opcode == PUTSTATIC) {
 			// Avisar o DelayGetFutureMethodVisitor que isto é um store inlined
@@ -137,22 +186,40 @@ public class ChangeFieldAccessMethodVisitor extends MethodVisitor {
 						"(" + Type.OBJECT.bytecodeName() + simpleType.bytecodeName() + "J)V");
 			}
 		} else if (opcode == GETSTATIC) {
+			if (multiVersion) {
+				mv.visitFieldInsn(GETSTATIC, sfbAccessClass.asmName(), "$staticFieldBase",
+						Options.STATICWORKAROUND ?
+							CommonTypes.STATICFIELDBASE.bytecodeName() : Type.OBJECT.bytecodeName());
+				mv.visitFieldInsn(GETSTATIC, offsetAccessClass.asmName(), "$offset_" + name, "I");
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "markVersioned",
+						"(" + (Options.STATICWORKAROUND ?
+							CommonTypes.STATICFIELDBASE.bytecodeName() : Type.OBJECT.bytecodeName()) + "I)V");
+			}
 			mv.visitFieldInsn(GETSTATIC, sfbAccessClass.asmName(), "$staticFieldBase",
 					Options.STATICWORKAROUND ?
 						CommonTypes.STATICFIELDBASE.bytecodeName() : Type.OBJECT.bytecodeName());
 			mv.visitFieldInsn(GETSTATIC, ownerClass.asmName(), name, desc);
 			mv.visitFieldInsn(GETSTATIC, offsetAccessClass.asmName(), "$offset_" + name, "I");
-			mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "load" + simpleTypeName,
+			if (effectivelyFinal) {
+				mv.visitIntInsn(SIPUSH, FieldGuard.guard(declaringClass.asmName(), name));
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "loadImmutable" + simpleTypeName,
+					"(" + (Options.STATICWORKAROUND ?
+						CommonTypes.STATICFIELDBASE.bytecodeName() : Type.OBJECT.bytecodeName()) +
+					simpleType.bytecodeName() + "II)" + simpleType.bytecodeName());
+			} else {
+				mv.visitMethodInsn(INVOKESTATIC, CommonTypes.TRANSACTION.asmName(), "load" + simpleTypeName,
 					"(" + (Options.STATICWORKAROUND ?
 						CommonTypes.STATICFIELDBASE.bytecodeName() : Type.OBJECT.bytecodeName()) +
 					simpleType.bytecodeName() + "I)" + simpleType.bytecodeName());
+			}
 			if (!fieldType.isPrimitive()) mv.visitTypeInsn(CHECKCAST, fieldType.asmName());
 		} else {
 			throw new AssertionError("Unexpected opcode");
 		}
 	}
 
-	private static InfoField getField(Type ownerClass, String fieldName, Type fieldType) {
+	/** Não é privado para poder ser usado pelo RedundantLoadEliminationMethodVisitor **/
+	static InfoField getField(Type ownerClass, String fieldName, Type fieldType) {
 		try {
 			// Tentar encontrar field apenas na ownerClass
 			// Nota: Se a classe já estava cached, este passo já inclui os abaixo
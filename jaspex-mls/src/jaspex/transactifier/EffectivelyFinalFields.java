@@ -0,0 +1,253 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.transactifier;
+
+import java.io.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import jaspex.ClassFilter;
+import jaspex.stm.FieldGuard;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import asmlib.Type;
+
+import jaspex.transactifier.EscapeAnalysisMethodVisitor.EscapeAnalyzer;
+import jaspex.transactifier.EscapeAnalysisMethodVisitor.EscapeValue;
+
+/** Registo dos fields efectivamente final, usado pelo -effectivelyfinal.
+  *
+  * Um field é efectivamente final se não for final nem volatile, e só for escrito nos constructores da
+  * classe que o declara (e sempre no this), ou no seu <clinit> (se for static). Na primeira utilização,
+  * são analisadas todas as classes transactificáveis presentes no classpath; as classes que forem
+  * depois carregadas de outro sítio são analisadas quando passam pelo Transactifier (ou quando são lidas
+  * da cache, com -classcache), e se escreverem num field que já foi considerado efectivamente final, o
+  * seu FieldGuard é invalidado.
+  **/
+public final class EffectivelyFinalFields {
+
+	private static final Logger Log = LoggerFactory.getLogger(EffectivelyFinalFields.class);
+
+	// Superclasse de cada classe analisada
+	private static final Map<String, String> _superclasses = new HashMap<String, String>();
+	// Fields candidatos (não final nem volatile) declarados por cada classe analisada
+	private static final Map<String, Set<String>> _candidates = new HashMap<String, Set<String>>();
+	// Para cada nome de field, owners (tal como aparecem no PUTFIELD/PUTSTATIC) de escritas feitas
+	// fora da inicialização
+	private static final Map<String, Set<String>> _writes = new HashMap<String, Set<String>>();
+
+	private static boolean _scanned;
+
+	private EffectivelyFinalFields() { }
+
+	/** Verifica se o field name declarado pela classe declaringClass é efectivamente final **/
+	public static synchronized boolean isEffectivelyFinal(Type declaringClass, String name) {
+		ensureScanned();
+		String declaring = declaringClass.asmName();
+		Set<String> candidates = _candidates.get(declaring);
+		if (candidates == null || !candidates.contains(name)) return false;
+
+		Set<String> owners = _writes.get(name);
+		if (owners != null) {
+			for (String owner : owners) {
+				if (mayResolveTo(owner, declaring)) return false;
+			}
+		}
+		return true;
+	}
+
+	/** Chamado pelo Transactifier (ou pelo SpeculativeClassLoader, para classes lidas da -classcache) para
+	  * cada classe carregada; se a classe ainda não tinha sido analisada, invalida os fields efectivamente
+	  * final em que escreve.
+	  **/
+	public static synchronized void classLoaded(ClassReader cr) {
+		ensureScanned();
+		if (_superclasses.containsKey(cr.getClassName())) return;
+
+		Log.debug("Class {} was not on the classpath scanned by -effectivelyfinal", cr.getClassName());
+		for (String[] write : scan(cr)) {
+			String owner = write[0];
+			String name = write[1];
+			for (Map.Entry<String, Set<String>> entry : _candidates.entrySet()) {
+				if (entry.getValue().contains(name) && mayResolveTo(owner, entry.getKey())) {
+					FieldGuard.invalidate(FieldGuard.guard(entry.getKey(), name));
+				}
+			}
+		}
+	}
+
+	/** Verifica se um acesso ao field através de owner pode referir-se ao field declarado em declaring **/
+	private static boolean mayResolveTo(String owner, String declaring) {
+		while (owner != null) {
+			if (owner.equals(declaring)) return true;
+			String superclass = _superclasses.get(owner);
+			if (superclass == null) {
+				// Classes não transactificáveis nunca são subclasses de classes transactificáveis;
+				// de outras classes que não foram analisadas, não se sabe nada
+				return owner.isEmpty() ? false : ClassFilter.isTransactifiable(Type.fromAsm(owner));
+			}
+			owner = superclass;
+		}
+		return false;
+	}
+
+	private static void ensureScanned() {
+		if (_scanned) return;
+		_scanned = true;
+
+		long startTime = System.currentTimeMillis();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			File file = new File(entry);
+			try {
+				if (file.isDirectory()) {
+					scanDirectory(file);
+				} else if (file.isFile()) {
+					scanJar(file);
+				}
+			} catch (IOException e) {
+				Log.warn("Error scanning " + file + " for effectively final fields", e);
+			}
+		}
+
+		int count = 0;
+		for (Map.Entry<String, Set<String>> entry : _candidates.entrySet()) {
+			for (String name : entry.getValue()) {
+				if (isEffectivelyFinal(Type.fromAsm(entry.getKey()), name)) count++;
+			}
+		}
+		Log.debug("Found {} effectively final fields in {} classes ({}ms)", new Object[] {
+			count, _superclasses.size(), System.currentTimeMillis() - startTime });
+	}
+
+	private static void scanDirectory(File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		for (File f : files) {
+			if (f.isDirectory()) {
+				scanDirectory(f);
+			} else if (f.getName().endsWith(".class")) {
+				InputStream is = new FileInputStream(f);
+				try {
+					scanClass(is);
+				} finally {
+					is.close();
+				}
+			}
+		}
+	}
+
+	private static void scanJar(File file) throws IOException {
+		if (!file.getName().endsWith(".jar")) return;
+		JarFile jar = new JarFile(file);
+		try {
+			for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+				JarEntry entry = e.nextElement();
+				if (!entry.getName().endsWith(".class")) continue;
+				InputStream is = jar.getInputStream(entry);
+				try {
+					scanClass(is);
+				} finally {
+					is.close();
+				}
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	private static void scanClass(InputStream is) throws IOException {
+		ClassReader cr;
+		try {
+			cr = new ClassReader(is);
+		} catch (IllegalArgumentException e) {
+			// Versão do classfile não suportada pelo ASM; a classe também não pode ser transactificada
+			return;
+		}
+		if (_superclasses.containsKey(cr.getClassName()) ||
+			!ClassFilter.isTransactifiable(Type.fromAsm(cr.getClassName()))) return;
+		scan(cr);
+	}
+
+	/** Analisa a classe, e devolve as escritas (owner, nome) feitas fora da inicialização **/
+	private static List<String[]> scan(ClassReader cr) {
+		ClassNode cn = new ClassNode();
+		cr.accept(cn, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+
+		_superclasses.put(cn.name, cn.superName != null ? cn.superName : "");
+		Set<String> candidates = new HashSet<String>();
+		for (Object o : cn.fields) {
+			FieldNode fn = (FieldNode) o;
+			if ((fn.access & (ACC_FINAL | ACC_VOLATILE)) == 0) candidates.add(fn.name);
+		}
+		_candidates.put(cn.name, candidates);
+
+		List<String[]> writes = new ArrayList<String[]>();
+		for (Object o : cn.methods) {
+			MethodNode mn = (MethodNode) o;
+			Frame<EscapeValue>[] frames = null;
+			boolean analyzed = false;
+			for (Iterator<AbstractInsnNode> it = mn.instructions.iterator(); it.hasNext();) {
+				AbstractInsnNode insn = it.next();
+				int opcode = insn.getOpcode();
+				if (opcode != PUTFIELD && opcode != PUTSTATIC) continue;
+				FieldInsnNode fin = (FieldInsnNode) insn;
+
+				if (fin.owner.equals(cn.name) && candidates.contains(fin.name)) {
+					if (opcode == PUTSTATIC && mn.name.equals("<clinit>")) continue;
+					if (opcode == PUTFIELD && mn.name.equals("<init>")) {
+						if (!analyzed) {
+							analyzed = true;
+							try {
+								frames = new EscapeAnalyzer(true).analyze(cn.name, mn);
+							} catch (AnalyzerException e) { }
+						}
+						if (frames != null && writesThis(frames[mn.instructions.indexOf(insn)])) continue;
+					}
+				}
+
+				writes.add(new String[] { fin.owner, fin.name });
+				Set<String> owners = _writes.get(fin.name);
+				if (owners == null) {
+					owners = new HashSet<String>();
+					_writes.put(fin.name, owners);
+				}
+				owners.add(fin.owner);
+			}
+		}
+		return writes;
+	}
+
+	private static boolean writesThis(Frame<EscapeValue> f) {
+		// Código que nunca é executado não conta
+		if (f == null) return true;
+		return f.getStack(f.getStackSize() - 2)._site == EscapeAnalysisMethodVisitor.THIS_SITE;
+	}
+}
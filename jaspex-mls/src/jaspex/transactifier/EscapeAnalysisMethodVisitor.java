@@ -0,0 +1,394 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.transactifier;
+
+import java.io.IOException;
+import java.util.*;
+
+import jaspex.ClassFilter;
+import jaspex.speculation.CommonTypes;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import asmlib.InfoClass;
+
+/** Análise de escape intraprocedimental, usada pelo -escapeanalysis.
+  *
+  * Cada referência é associada ao ponto do método onde o objecto/array foi alocado (NEW, NEWARRAY,
+  * ANEWARRAY, MULTIANEWARRAY), e é considerada "fresca" até à próxima invocação de um método, já que
+  * qualquer invocação pode ser um ponto de spawn, e uma re-execução a partir daí voltaria a ver os
+  * valores escritos directamente pela tentativa anterior. Acessos a fields e arrays de referências
+  * frescas cujo ponto de alocação nunca escapa do método (não é guardado num field ou array, passado
+  * como argumento, retornado nem lançado) são marcados com MARKER_LOCALACCESS, e o
+  * ChangeFieldAccessMethodVisitor/ChangeArrayAccessMethodVisitor deixam-nos inalterados.
+  *
+  * Invocar um constructor "seguro" não conta como invocação: um constructor é seguro se não tiver
+  * saltos nem handlers de excepções, se só invocar outros constructores seguros, e se o this não
+  * escapar. Os acessos ao this num constructor seguro também são feitos directamente, para que as
+  * escritas feitas pelo constructor estejam sempre em memória quando o método que alocou o objecto
+  * as lê directamente (e como o constructor não tem saltos, uma re-execução volta sempre a escrever
+  * todos os fields que a tentativa anterior escreveu).
+  **/
+public class EscapeAnalysisMethodVisitor extends MethodNode {
+
+	private static final Logger Log = LoggerFactory.getLogger(EscapeAnalysisMethodVisitor.class);
+
+	// Ponto de alocação usado para o this durante a análise de constructores
+	static final Object THIS_SITE = new Object();
+
+	// Cache dos resultados de isSafeConstructor(), indexada por owner + "." + desc
+	private static final Map<String, Boolean> _safeConstructors = new HashMap<String, Boolean>();
+
+	private final MethodVisitor _next;
+	private final String _owner;
+
+	public EscapeAnalysisMethodVisitor(int access, String name, String desc, String signature,
+		String[] exceptions, ClassVisitor cv, InfoClass currentClass) {
+		super(Opcodes.ASM4, access, name, desc, signature, exceptions);
+		_next = cv.visitMethod(access, name, desc, signature, exceptions);
+		_owner = currentClass.type().asmName();
+	}
+
+	@Override
+	public void visitEnd() {
+		if ((access & (ACC_ABSTRACT | ACC_NATIVE)) == 0 && !name.equals("<clinit>")) markLocalAccesses();
+		accept(_next);
+	}
+
+	private void markLocalAccesses() {
+		boolean constructor = name.equals("<init>");
+		Frame<EscapeValue>[] frames;
+		try {
+			frames = new EscapeAnalyzer(constructor).analyze(_owner, this);
+		} catch (AnalyzerException e) {
+			Log.debug("Escape analysis failed for " + _owner + "." + name + desc + ": " + e.getMessage());
+			return;
+		}
+
+		Set<Object> escaped = escapedSites(instructions, frames);
+		// O this só pode ser acedido directamente se os métodos que alocam o objecto concordarem
+		if (constructor && (frames[0].getLocal(0)._site != THIS_SITE || !isSafeConstructor(_owner, desc))) {
+			escaped.add(THIS_SITE);
+		}
+
+		List<AbstractInsnNode> fieldAccesses = new ArrayList<AbstractInsnNode>();
+		List<AbstractInsnNode> arrayAccesses = new ArrayList<AbstractInsnNode>();
+		for (int i = 0; i < frames.length; i++) {
+			Frame<EscapeValue> f = frames[i];
+			if (f == null) continue;
+			AbstractInsnNode insn = instructions.get(i);
+			int size = f.getStackSize();
+			switch (insn.getOpcode()) {
+				case GETFIELD:
+					if (isLocal(f.getStack(size - 1), escaped)) fieldAccesses.add(insn);
+					break;
+				case PUTFIELD:
+					if (isLocal(f.getStack(size - 2), escaped)) fieldAccesses.add(insn);
+					break;
+				case AALOAD: case BALOAD: case CALOAD: case DALOAD:
+				case FALOAD: case IALOAD: case LALOAD: case SALOAD:
+					if (isLocal(f.getStack(size - 2), escaped)) arrayAccesses.add(insn);
+					break;
+				case AASTORE: case BASTORE: case CASTORE: case DASTORE:
+				case FASTORE: case IASTORE: case LASTORE: case SASTORE:
+					if (isLocal(f.getStack(size - 3), escaped)) arrayAccesses.add(insn);
+					break;
+			}
+		}
+
+		for (AbstractInsnNode insn : fieldAccesses) {
+			instructions.insertBefore(insn,
+				new MethodInsnNode(INVOKESTATIC, CommonTypes.MARKER_LOCALACCESS, "field", "()V"));
+		}
+		for (AbstractInsnNode insn : arrayAccesses) {
+			instructions.insertBefore(insn,
+				new MethodInsnNode(INVOKESTATIC, CommonTypes.MARKER_LOCALACCESS, "array", "()V"));
+		}
+	}
+
+	private static boolean isLocal(EscapeValue v, Set<Object> escaped) {
+		return v._site != null && v._fresh && !escaped.contains(v._site);
+	}
+
+	/** Devolve os pontos de alocação que escapam do método em algum ponto **/
+	private static Set<Object> escapedSites(InsnList instructions, Frame<EscapeValue>[] frames) {
+		Set<Object> escaped = new HashSet<Object>();
+		for (int i = 0; i < frames.length; i++) {
+			Frame<EscapeValue> f = frames[i];
+			if (f == null) continue;
+			AbstractInsnNode insn = instructions.get(i);
+			int size = f.getStackSize();
+			switch (insn.getOpcode()) {
+				case PUTFIELD: case PUTSTATIC: case AASTORE: case ARETURN: case ATHROW:
+					escape(f.getStack(size - 1), escaped);
+					break;
+				case INVOKEVIRTUAL: case INVOKESPECIAL: case INVOKESTATIC: case INVOKEINTERFACE: {
+					MethodInsnNode min = (MethodInsnNode) insn;
+					int args = Type.getArgumentTypes(min.desc).length + (min.getOpcode() == INVOKESTATIC ? 0 : 1);
+					for (int j = 0; j < args; j++) {
+						// Receiver de um constructor seguro não escapa
+						if (j == 0 && isSafeConstructorCall(min)) continue;
+						escape(f.getStack(size - args + j), escaped);
+					}
+					break;
+				}
+				case INVOKEDYNAMIC: {
+					int args = Type.getArgumentTypes(((InvokeDynamicInsnNode) insn).desc).length;
+					for (int j = 0; j < args; j++) escape(f.getStack(size - args + j), escaped);
+					break;
+				}
+			}
+		}
+		return escaped;
+	}
+
+	private static void escape(EscapeValue v, Set<Object> escaped) {
+		if (v._site != null) escaped.add(v._site);
+	}
+
+	private static boolean isSafeConstructorCall(AbstractInsnNode insn) {
+		if (insn.getOpcode() != INVOKESPECIAL) return false;
+		MethodInsnNode min = (MethodInsnNode) insn;
+		return min.name.equals("<init>") && isSafeConstructor(min.owner, min.desc);
+	}
+
+	/** Verifica se o constructor owner.<init>desc é seguro (ver comentário no topo da classe) **/
+	static boolean isSafeConstructor(String owner, String desc) {
+		if (owner.equals("java/lang/Object")) return true;
+		if (!ClassFilter.isTransactifiable(asmlib.Type.fromAsm(owner))) return false;
+
+		String key = owner + "." + desc;
+		synchronized (_safeConstructors) {
+			Boolean safe = _safeConstructors.get(key);
+			if (safe != null) return safe;
+			// Evitar recursão infinita em casos patológicos
+			_safeConstructors.put(key, false);
+		}
+
+		boolean safe = checkConstructor(owner, desc);
+		synchronized (_safeConstructors) {
+			_safeConstructors.put(key, safe);
+		}
+		return safe;
+	}
+
+	private static boolean checkConstructor(String owner, String desc) {
+		ClassNode cn = new ClassNode();
+		try {
+			new ClassReader(asmlib.Type.fromAsm(owner).commonName()).accept(cn, ClassReader.SKIP_FRAMES);
+		} catch (IOException e) {
+			return false;
+		}
+
+		MethodNode ctor = null;
+		for (Object o : cn.methods) {
+			MethodNode m = (MethodNode) o;
+			if (m.name.equals("<init>") && m.desc.equals(desc)) ctor = m;
+		}
+		if (ctor == null || !ctor.tryCatchBlocks.isEmpty()) return false;
+
+		for (Iterator<AbstractInsnNode> it = ctor.instructions.iterator(); it.hasNext();) {
+			AbstractInsnNode insn = it.next();
+			if (insn instanceof JumpInsnNode || insn instanceof TableSwitchInsnNode ||
+				insn instanceof LookupSwitchInsnNode || insn instanceof InvokeDynamicInsnNode) return false;
+			if (insn instanceof MethodInsnNode && !isSafeConstructorCall(insn)) return false;
+		}
+
+		Frame<EscapeValue>[] frames;
+		try {
+			frames = new EscapeAnalyzer(true).analyze(owner, ctor);
+		} catch (AnalyzerException e) {
+			return false;
+		}
+		return frames[0].getLocal(0)._site == THIS_SITE &&
+			!escapedSites(ctor.instructions, frames).contains(THIS_SITE);
+	}
+
+	/** Valor abstracto: ponto de alocação da referência (ou null, se desconhecido) **/
+	static final class EscapeValue implements Value {
+		static final EscapeValue OTHER1 = new EscapeValue(1, null, false);
+		static final EscapeValue OTHER2 = new EscapeValue(2, null, false);
+
+		final int _size;
+		final Object _site;
+		final boolean _fresh;
+
+		EscapeValue(int size, Object site, boolean fresh) {
+			_size = size;
+			_site = site;
+			_fresh = fresh;
+		}
+
+		static EscapeValue other(Value v) {
+			if (v == null) return null;
+			return v.getSize() == 2 ? OTHER2 : OTHER1;
+		}
+
+		EscapeValue stale() {
+			return _fresh ? new EscapeValue(_size, _site, false) : this;
+		}
+
+		@Override
+		public int getSize() {
+			return _size;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof EscapeValue)) return false;
+			EscapeValue other = (EscapeValue) o;
+			return _size == other._size && _site == other._site && _fresh == other._fresh;
+		}
+
+		@Override
+		public int hashCode() {
+			return (_site != null ? System.identityHashCode(_site) : 0) + _size * 2 + (_fresh ? 1 : 0);
+		}
+	}
+
+	/** Interpreter que segue os pontos de alocação. O tamanho dos restantes valores é obtido a partir
+	  * do BasicInterpreter.
+	  **/
+	static final class EscapeInterpreter extends Interpreter<EscapeValue> {
+		private final BasicInterpreter _basic = new BasicInterpreter();
+		// O primeiro valor do tipo objecto criado pelo Analyzer é o this
+		private boolean _pendingThis;
+
+		EscapeInterpreter(boolean constructor) {
+			super(Opcodes.ASM4);
+			_pendingThis = constructor;
+		}
+
+		private static BasicValue basic(EscapeValue v) {
+			return v.getSize() == 2 ? BasicValue.LONG_VALUE : BasicValue.INT_VALUE;
+		}
+
+		@Override
+		public EscapeValue newValue(Type type) {
+			if (_pendingThis && type != null && type.getSort() == Type.OBJECT) {
+				_pendingThis = false;
+				return new EscapeValue(1, THIS_SITE, true);
+			}
+			return EscapeValue.other(_basic.newValue(type));
+		}
+
+		@Override
+		public EscapeValue newOperation(AbstractInsnNode insn) throws AnalyzerException {
+			if (insn.getOpcode() == NEW) return new EscapeValue(1, insn, true);
+			return EscapeValue.other(_basic.newOperation(insn));
+		}
+
+		@Override
+		public EscapeValue copyOperation(AbstractInsnNode insn, EscapeValue value) {
+			return value;
+		}
+
+		@Override
+		public EscapeValue unaryOperation(AbstractInsnNode insn, EscapeValue value) throws AnalyzerException {
+			switch (insn.getOpcode()) {
+				case NEWARRAY: case ANEWARRAY: return new EscapeValue(1, insn, true);
+				case CHECKCAST: return value;
+			}
+			return EscapeValue.other(_basic.unaryOperation(insn, basic(value)));
+		}
+
+		@Override
+		public EscapeValue binaryOperation(AbstractInsnNode insn, EscapeValue value1, EscapeValue value2)
+			throws AnalyzerException {
+			return EscapeValue.other(_basic.binaryOperation(insn, basic(value1), basic(value2)));
+		}
+
+		@Override
+		public EscapeValue ternaryOperation(AbstractInsnNode insn, EscapeValue value1, EscapeValue value2,
+			EscapeValue value3) {
+			return null;
+		}
+
+		@Override
+		public EscapeValue naryOperation(AbstractInsnNode insn, List<? extends EscapeValue> values)
+			throws AnalyzerException {
+			if (insn.getOpcode() == MULTIANEWARRAY) return new EscapeValue(1, insn, true);
+			List<BasicValue> basicValues = new ArrayList<BasicValue>(values.size());
+			for (EscapeValue v : values) basicValues.add(basic(v));
+			return EscapeValue.other(_basic.naryOperation(insn, basicValues));
+		}
+
+		@Override
+		public void returnOperation(AbstractInsnNode insn, EscapeValue value, EscapeValue expected) { }
+
+		@Override
+		public EscapeValue merge(EscapeValue v, EscapeValue w) {
+			if (v.equals(w)) return v;
+			if (v._site != null && v._site == w._site) return new EscapeValue(v._size, v._site, false);
+			return v.getSize() == w.getSize() ? EscapeValue.other(v) : EscapeValue.OTHER1;
+		}
+	}
+
+	/** Frame em que todas as referências deixam de ser frescas depois de uma invocação **/
+	static final class EscapeFrame extends Frame<EscapeValue> {
+		EscapeFrame(int nLocals, int nStack) {
+			super(nLocals, nStack);
+		}
+
+		EscapeFrame(Frame<? extends EscapeValue> src) {
+			super(src);
+		}
+
+		@Override
+		public void execute(AbstractInsnNode insn, Interpreter<EscapeValue> interpreter) throws AnalyzerException {
+			super.execute(insn, interpreter);
+			if ((insn instanceof MethodInsnNode && !isSafeConstructorCall(insn)) ||
+				insn instanceof InvokeDynamicInsnNode) {
+				for (int i = 0; i < getLocals(); i++) {
+					EscapeValue v = getLocal(i);
+					if (v != null) setLocal(i, v.stale());
+				}
+				EscapeValue[] stack = new EscapeValue[getStackSize()];
+				for (int i = 0; i < stack.length; i++) stack[i] = getStack(i);
+				clearStack();
+				for (EscapeValue v : stack) push(v.stale());
+			}
+		}
+	}
+
+	static final class EscapeAnalyzer extends Analyzer<EscapeValue> {
+		EscapeAnalyzer(boolean constructor) {
+			super(new EscapeInterpreter(constructor));
+		}
+
+		@Override
+		protected Frame<EscapeValue> newFrame(int nLocals, int nStack) {
+			return new EscapeFrame(nLocals, nStack);
+		}
+
+		@Override
+		protected Frame<EscapeValue> newFrame(Frame<? extends EscapeValue> src) {
+			return new EscapeFrame(src);
+		}
+	}
+}
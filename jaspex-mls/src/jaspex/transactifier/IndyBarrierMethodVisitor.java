@@ -0,0 +1,56 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package jaspex.transactifier;
+
+import jaspex.speculation.CommonTypes;
+
+import org.objectweb.asm.*;
+import static org.objectweb.asm.Opcodes.*;
+
+/** Substitui as barreiras de leitura (Transaction.load* e Transaction.arrayLoad*) por call sites
+  * invokedynamic, que enquanto não existem transacções activas são ligados a um acesso directo
+  * (ver jaspex.stm.BarrierSwitch).
+  *
+  * As barreiras de escrita continuam a ser INVOKESTATICs, já que fora de transacções também fazem
+  * trabalho (-orecs, -eagerinvalidation), e são usadas como marcadores pelo DelayGetFutureMethodVisitor.
+  **/
+public class IndyBarrierMethodVisitor extends MethodVisitor {
+
+	private static final Handle BOOTSTRAP = new Handle(H_INVOKESTATIC, CommonTypes.BARRIERSWITCH.asmName(),
+		"bootstrap", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;" +
+		"Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;");
+
+	public IndyBarrierMethodVisitor(int access, String name, String desc, String signature,
+		String[] exceptions, ClassVisitor cv) {
+		super(Opcodes.ASM4, cv.visitMethod(access, name, desc, signature, exceptions));
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+		if (opcode == INVOKESTATIC && owner.equals(CommonTypes.TRANSACTION.asmName()) &&
+			(name.startsWith("load") || name.startsWith("arrayLoad"))) {
+			mv.visitInvokeDynamicInsn(name, desc, BOOTSTRAP);
+			return;
+		}
+		mv.visitMethodInsn(opcode, owner, name, desc);
+	}
+
+}
@@ -0,0 +1,488 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package jaspex.transactifier;
+
+import java.util.*;
+
+import jaspex.speculation.CommonTypes;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import asmlib.InfoClass;
+import asmlib.InfoField;
+
+/** Eliminação de barreiras de leitura redundantes, usada pelo -loadelimination.
+  *
+  * Trabalha sobre o código já transactificado, reconhecendo as sequências geradas pelo
+  * ChangeFieldAccessMethodVisitor e pelo ChangeArrayAccessMethodVisitor para leituras de fields de um
+  * objecto guardado numa variável local, de fields static, e de posições de arrays (com índice numa
+  * variável local ou constante). Uma análise de disponibilidade sobre o CFG do método determina as
+  * leituras que repetem uma anterior sem que entretanto tenha havido uma escrita, uma invocação (que
+  * pode ser um ponto de spawn, ou escrever no field), um monitor ou uma alteração às variáveis locais
+  * usadas; o valor da primeira leitura é guardado numa nova variável local, e as seguintes passam a
+  * usá-lo. A transacção vê o mesmo valor em ambos os casos, e a validação no commit continua a
+  * detectar alterações feitas por outras transacções. Leituras de fields volatile nunca são
+  * reutilizadas: um ciclo que espera por uma escrita feita por outra thread tem que voltar a ler o field.
+  *
+  * Antes da análise, as leituras de fields do this e de fields static da própria classe feitas em ciclos
+  * que não contêm nenhuma das operações acima são copiadas para antes do ciclo, passando as do ciclo a
+  * ser redundantes. Estas leituras nunca lançam excepções nem fazem trigger da inicialização de outra
+  * classe, por isso executá-las mesmo que o ciclo não o faça apenas acrescenta uma entrada ao read-set.
+  **/
+public class RedundantLoadEliminationMethodVisitor extends MethodNode {
+
+	private static final Logger Log = LoggerFactory.getLogger(RedundantLoadEliminationMethodVisitor.class);
+
+	private static final String TRANSACTION = CommonTypes.TRANSACTION.asmName();
+	private static final int MAX_PASSES = 3;
+
+	/** Sequência de instruções que faz uma leitura transaccional **/
+	private static final class LoadSite {
+		final AbstractInsnNode _first;
+		final AbstractInsnNode _last;
+		final String _key;
+		final Type _type;
+		// Field lido (null para leituras de arrays)
+		final FieldInsnNode _field;
+		// Variáveis locais de que depende a leitura (-1 se nenhuma)
+		final int _object;
+		final int _index;
+		// Cópia colocada antes de um ciclo, seguida de um store para a variável local da chave
+		boolean _copy;
+		boolean _redundant;
+
+		LoadSite(AbstractInsnNode first, AbstractInsnNode last, String key, Type type, FieldInsnNode field,
+			int object, int index) {
+			_first = first;
+			_last = last;
+			_key = key;
+			_type = type;
+			_field = field;
+			_object = object;
+			_index = index;
+		}
+
+		boolean dependsOn(int local) {
+			return local == _object || local == _index;
+		}
+	}
+
+	private final MethodVisitor _next;
+	private final InfoClass _currentClass;
+	private final String _owner;
+
+	// Primeira instrução de cada cópia colocada antes de um ciclo
+	private final Set<AbstractInsnNode> _copies = new HashSet<AbstractInsnNode>();
+	// Variável local usada para guardar o valor de cada chave
+	private final Map<String, Integer> _locals = new HashMap<String, Integer>();
+
+	public RedundantLoadEliminationMethodVisitor(int access, String name, String desc, String signature,
+		String[] exceptions, ClassVisitor cv, InfoClass currentClass) {
+		super(Opcodes.ASM4, access, name, desc, signature, exceptions);
+		_next = cv.visitMethod(access, name, desc, signature, exceptions);
+		_currentClass = currentClass;
+		_owner = currentClass.type().asmName();
+	}
+
+	@Override
+	public void visitEnd() {
+		if ((access & (ACC_ABSTRACT | ACC_NATIVE)) == 0 && !name.equals("<clinit>")) {
+			try {
+				if ((access & ACC_STATIC) != 0 || !name.equals("<init>")) hoistLoads();
+				// Eliminar leituras de fields pode expor novas leituras de arrays (a[i] quando a era lido
+				// de um field), por isso são feitas algumas passagens
+				for (int i = 0; i < MAX_PASSES && eliminateLoads(); i++) { }
+			} catch (AnalyzerException e) {
+				Log.debug("Load elimination failed for " + _owner + "." + name + desc + ": " + e.getMessage());
+			}
+		}
+		accept(_next);
+	}
+
+	/** Obtém a variável local onde é guardado o valor da chave **/
+	private int local(LoadSite site) {
+		Integer local = _locals.get(site._key);
+		if (local == null) {
+			local = maxLocals;
+			maxLocals += site._type.getSize();
+			_locals.put(site._key, local);
+		}
+		return local;
+	}
+
+	// Reconhecimento das leituras
+
+	private static AbstractInsnNode next(AbstractInsnNode insn, int opcode) {
+		AbstractInsnNode next = insn.getNext();
+		return (next != null && next.getOpcode() == opcode) ? next : null;
+	}
+
+	private static boolean isLoadBarrier(AbstractInsnNode insn, String prefix) {
+		if (insn == null || insn.getOpcode() != INVOKESTATIC) return false;
+		MethodInsnNode min = (MethodInsnNode) insn;
+		return min.owner.equals(TRANSACTION) && min.name.startsWith(prefix) && !min.name.startsWith("loadImmutable");
+	}
+
+	/** Devolve a CHECKCAST gerada a seguir à barreira para o tipo dado, ou null se não existir **/
+	private static AbstractInsnNode checkcast(AbstractInsnNode insn, Type type) {
+		AbstractInsnNode next = next(insn, CHECKCAST);
+		return (next != null && ((TypeInsnNode) next).desc.equals(type.getInternalName())) ? next : null;
+	}
+
+	private static boolean isOffset(AbstractInsnNode insn) {
+		return insn != null && insn.getOpcode() == GETSTATIC && ((FieldInsnNode) insn).name.startsWith("$offset_");
+	}
+
+	/** Verifica se insn é o início de uma leitura transaccional **/
+	private static LoadSite match(AbstractInsnNode insn) {
+		if (insn.getOpcode() == ALOAD) {
+			int local = ((VarInsnNode) insn).var;
+			AbstractInsnNode next = insn.getNext();
+			if (next == null) return null;
+
+			if (next.getOpcode() == DUP) {
+				// ALOAD n; DUP; GETFIELD; GETSTATIC $offset_; INVOKESTATIC load*; [CHECKCAST]
+				AbstractInsnNode getfield = next(next, GETFIELD);
+				if (getfield == null || !isOffset(getfield.getNext())) return null;
+				AbstractInsnNode barrier = getfield.getNext().getNext();
+				if (!isLoadBarrier(barrier, "load")) return null;
+				FieldInsnNode fin = (FieldInsnNode) getfield;
+				Type type = Type.getType(fin.desc);
+				AbstractInsnNode last = barrier;
+				if (type.getSize() == 1 && type.getSort() >= Type.ARRAY) {
+					last = checkcast(barrier, type);
+					if (last == null) return null;
+				}
+				return new LoadSite(insn, last, "F" + local + " " + fin.owner + "." + fin.name + " " + fin.desc,
+					type, fin, local, -1);
+			}
+
+			// ALOAD a; ILOAD i/constante; INVOKESTATIC arrayLoad*; [CHECKCAST]
+			int index = -1;
+			String indexKey;
+			if (next.getOpcode() == ILOAD) {
+				index = ((VarInsnNode) next).var;
+				indexKey = "L" + index;
+			} else if (next.getOpcode() >= ICONST_M1 && next.getOpcode() <= ICONST_5) {
+				indexKey = "C" + (next.getOpcode() - ICONST_0);
+			} else if (next.getOpcode() == BIPUSH || next.getOpcode() == SIPUSH) {
+				indexKey = "C" + ((IntInsnNode) next).operand;
+			} else {
+				return null;
+			}
+			AbstractInsnNode barrier = next.getNext();
+			if (!isLoadBarrier(barrier, "arrayLoad")) return null;
+			MethodInsnNode min = (MethodInsnNode) barrier;
+			Type type = Type.getReturnType(min.desc);
+			AbstractInsnNode last = barrier;
+			String castKey = "";
+			if (type.getSort() == Type.OBJECT) {
+				last = next(barrier, CHECKCAST);
+				if (last == null) return null;
+				castKey = " " + ((TypeInsnNode) last).desc;
+			}
+			return new LoadSite(insn, last, "A" + local + " " + indexKey + " " + min.name + castKey,
+				type, null, local, index);
+		}
+
+		if (insn.getOpcode() == GETSTATIC && ((FieldInsnNode) insn).name.equals("$staticFieldBase")) {
+			// GETSTATIC $staticFieldBase; GETSTATIC; GETSTATIC $offset_; INVOKESTATIC load*; [CHECKCAST]
+			AbstractInsnNode getstatic = next(insn, GETSTATIC);
+			if (getstatic == null || !isOffset(getstatic.getNext())) return null;
+			AbstractInsnNode barrier = getstatic.getNext().getNext();
+			if (!isLoadBarrier(barrier, "load")) return null;
+			FieldInsnNode fin = (FieldInsnNode) getstatic;
+			Type type = Type.getType(fin.desc);
+			AbstractInsnNode last = barrier;
+			if (type.getSize() == 1 && type.getSort() >= Type.ARRAY) {
+				last = checkcast(barrier, type);
+				if (last == null) return null;
+			}
+			return new LoadSite(insn, last, "S " + fin.owner + "." + fin.name + " " + fin.desc, type, fin, -1, -1);
+		}
+
+		return null;
+	}
+
+	private List<LoadSite> findLoadSites() {
+		List<LoadSite> sites = new ArrayList<LoadSite>();
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+			LoadSite site = match(insn);
+			if (site == null) continue;
+			insn = site._last;
+			if (site._field != null && isVolatile(site._field)) continue;
+			site._copy = _copies.contains(site._first);
+			sites.add(site);
+		}
+		return sites;
+	}
+
+	/** Verifica se o field é volatile, resolvendo-o tal como o ChangeFieldAccessMethodVisitor **/
+	private boolean isVolatile(FieldInsnNode fin) {
+		asmlib.Type ownerClass = asmlib.Type.fromAsm(fin.owner);
+		asmlib.Type fieldType = asmlib.Type.fromBytecode(fin.desc);
+		InfoField field = ownerClass.equals(_currentClass.type()) ?
+			_currentClass.getField(fin.name, fieldType) : null;
+		if (field == null) field = ChangeFieldAccessMethodVisitor.getField(ownerClass, fin.name, fieldType);
+		return (field.access() & ACC_VOLATILE) != 0;
+	}
+
+	/** Operações depois das quais nenhum valor lido anteriormente pode ser reutilizado **/
+	private static boolean killsAll(AbstractInsnNode insn) {
+		if (insn instanceof MethodInsnNode) {
+			return !isLoadBarrier(insn, "load") && !isLoadBarrier(insn, "arrayLoad");
+		}
+		switch (insn.getOpcode()) {
+			case INVOKEDYNAMIC:
+			case PUTFIELD: case PUTSTATIC:
+			case AASTORE: case BASTORE: case CASTORE: case DASTORE:
+			case FASTORE: case IASTORE: case LASTORE: case SASTORE:
+			case MONITORENTER: case MONITOREXIT:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/** Variável local alterada pela instrução, ou -1 **/
+	private static int writtenLocal(AbstractInsnNode insn) {
+		if (insn instanceof IincInsnNode) return ((IincInsnNode) insn).var;
+		if (insn instanceof VarInsnNode && insn.getOpcode() >= ISTORE && insn.getOpcode() <= ASTORE) {
+			return ((VarInsnNode) insn).var;
+		}
+		return -1;
+	}
+
+	/** Control flow graph do método, ao nível das instruções **/
+	private final class ControlFlow {
+		final List<List<Integer>> _successors = new ArrayList<List<Integer>>();
+		final BitSet _handlers = new BitSet();
+
+		ControlFlow() throws AnalyzerException {
+			int size = instructions.size();
+			for (int i = 0; i < size; i++) _successors.add(new ArrayList<Integer>(2));
+			new Analyzer<BasicValue>(new BasicInterpreter()) {
+				@Override
+				protected void newControlFlowEdge(int insn, int successor) {
+					_successors.get(insn).add(successor);
+				}
+
+				@Override
+				protected boolean newControlFlowExceptionEdge(int insn, int successor) {
+					_handlers.set(successor);
+					return true;
+				}
+			}.analyze(_owner, RedundantLoadEliminationMethodVisitor.this);
+		}
+	}
+
+	// Hoisting de leituras em ciclos
+
+	private void hoistLoads() throws AnalyzerException {
+		List<LoadSite> sites = findLoadSites();
+		if (sites.isEmpty()) return;
+		ControlFlow cfg = new ControlFlow();
+		boolean isStatic = (access & ACC_STATIC) != 0;
+
+		// As cópias são inseridas no fim, por isso os índices referem-se sempre às instruções originais
+		AbstractInsnNode[] insns = instructions.toArray();
+		Map<AbstractInsnNode, InsnList> insertions = new LinkedHashMap<AbstractInsnNode, InsnList>();
+
+		// Instruções que impedem o hoisting
+		BitSet blocked = new BitSet(insns.length);
+		for (int i = 0; i < insns.length; i++) {
+			if (killsAll(insns[i]) || (!isStatic && writtenLocal(insns[i]) == 0)) blocked.set(i);
+		}
+
+		for (int source = 0; source < insns.length; source++) {
+			for (int target : cfg._successors.get(source)) {
+				// Cada salto para trás define um ciclo [target, source]
+				if (target > source || target == 0) continue;
+				int b = blocked.nextSetBit(target);
+				if (b >= 0 && b <= source) continue;
+				int handler = cfg._handlers.nextSetBit(target);
+				if (handler >= 0 && handler <= source) continue;
+				hoistLoop(cfg, insns, sites, target, source, isStatic, insertions);
+			}
+		}
+
+		for (Map.Entry<AbstractInsnNode, InsnList> entry : insertions.entrySet()) {
+			instructions.insertBefore(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void hoistLoop(ControlFlow cfg, AbstractInsnNode[] insns, List<LoadSite> sites, int start, int end,
+		boolean isStatic, Map<AbstractInsnNode, InsnList> insertions) {
+		// Todas as entradas no ciclo têm que ir dar à mesma instrução, e vir de um GOTO ou de fall-through
+		int header = -1;
+		List<AbstractInsnNode> entries = new ArrayList<AbstractInsnNode>();
+		for (int i = 0; i < insns.length; i++) {
+			if (i >= start && i <= end) continue;
+			for (int successor : cfg._successors.get(i)) {
+				if (successor < start || successor > end) continue;
+				if (header >= 0 && header != successor) return;
+				header = successor;
+				AbstractInsnNode insn = insns[i];
+				if (insn.getOpcode() == GOTO) {
+					entries.add(insn);
+				} else if (!(insn instanceof JumpInsnNode) && !(insn instanceof TableSwitchInsnNode) &&
+						!(insn instanceof LookupSwitchInsnNode) && successor == i + 1) {
+					entries.add(insns[successor]);
+				} else {
+					return;
+				}
+			}
+		}
+		if (entries.isEmpty()) return;
+
+		Set<String> hoisted = new HashSet<String>();
+		for (LoadSite site : sites) {
+			int pos = instructions.indexOf(site._first);
+			if (pos < start || pos > end || !hoisted.add(site._key)) continue;
+			// Só leituras que nunca lançam excepções: fields do this, ou fields static acedidos através da
+			// própria classe (que já está inicializada, ao contrário de outras que o ciclo pode nunca usar)
+			if (site._field == null) continue;
+			if (site._object >= 0 ? (isStatic || site._object != 0) : !site._field.owner.equals(_owner)) continue;
+
+			for (AbstractInsnNode entry : entries) {
+				InsnList copy = new InsnList();
+				Map<LabelNode, LabelNode> labels = Collections.emptyMap();
+				for (AbstractInsnNode insn = site._first; ; insn = insn.getNext()) {
+					copy.add(insn.clone(labels));
+					if (insn == site._last) break;
+				}
+				copy.add(new VarInsnNode(site._type.getOpcode(ISTORE), local(site)));
+				_copies.add(copy.getFirst());
+
+				InsnList existing = insertions.get(entry);
+				if (existing == null) {
+					insertions.put(entry, copy);
+				} else {
+					existing.add(copy);
+				}
+			}
+		}
+	}
+
+	// Eliminação das leituras redundantes
+
+	/** Devolve true se alguma leitura foi eliminada **/
+	private boolean eliminateLoads() throws AnalyzerException {
+		List<LoadSite> sites = findLoadSites();
+		if (sites.isEmpty()) return false;
+
+		Map<String, Integer> keys = new HashMap<String, Integer>();
+		for (LoadSite site : sites) {
+			if (!keys.containsKey(site._key)) keys.put(site._key, keys.size());
+		}
+
+		ControlFlow cfg = new ControlFlow();
+		int size = instructions.size();
+		// Leitura gerada por cada instrução, e leituras que cada variável local invalida
+		LoadSite[] generated = new LoadSite[size];
+		for (LoadSite site : sites) generated[instructions.indexOf(site._last)] = site;
+		Map<Integer, BitSet> dependents = new HashMap<Integer, BitSet>();
+		for (LoadSite site : sites) {
+			for (int local : new int[] { site._object, site._index }) {
+				if (local < 0) continue;
+				BitSet bits = dependents.get(local);
+				if (bits == null) {
+					bits = new BitSet();
+					dependents.put(local, bits);
+				}
+				bits.set(keys.get(site._key));
+			}
+		}
+
+		// Análise de disponibilidade (must), com null para instruções ainda não visitadas
+		BitSet[] in = new BitSet[size];
+		Deque<Integer> worklist = new ArrayDeque<Integer>();
+		in[0] = new BitSet();
+		worklist.add(0);
+		for (int handler = cfg._handlers.nextSetBit(0); handler >= 0; handler = cfg._handlers.nextSetBit(handler + 1)) {
+			in[handler] = new BitSet();
+			worklist.add(handler);
+		}
+
+		while (!worklist.isEmpty()) {
+			int i = worklist.poll();
+			AbstractInsnNode insn = instructions.get(i);
+			BitSet out = (BitSet) in[i].clone();
+			if (killsAll(insn)) {
+				out.clear();
+			} else {
+				BitSet killed = dependents.get(writtenLocal(insn));
+				if (killed != null) out.andNot(killed);
+			}
+			if (generated[i] != null) out.set(keys.get(generated[i]._key));
+
+			for (int successor : cfg._successors.get(i)) {
+				if (cfg._handlers.get(successor)) continue;
+				if (in[successor] == null) {
+					in[successor] = (BitSet) out.clone();
+				} else {
+					int before = in[successor].cardinality();
+					in[successor].and(out);
+					if (in[successor].cardinality() == before) continue;
+				}
+				worklist.add(successor);
+			}
+		}
+
+		Set<String> reused = new HashSet<String>();
+		for (LoadSite site : sites) {
+			BitSet available = in[instructions.indexOf(site._first)];
+			site._redundant = available != null && available.get(keys.get(site._key));
+			if (site._redundant) reused.add(site._key);
+		}
+
+		for (LoadSite site : sites) {
+			if (site._redundant) {
+				// Substituir a leitura pelo valor guardado; cópias redundantes são simplesmente removidas,
+				// juntamente com o seu store
+				AbstractInsnNode end = site._copy ? site._last.getNext() : site._last;
+				AbstractInsnNode insn = site._first;
+				if (!site._copy) {
+					instructions.insertBefore(insn, new VarInsnNode(site._type.getOpcode(ILOAD), local(site)));
+				}
+				while (true) {
+					AbstractInsnNode next = insn.getNext();
+					instructions.remove(insn);
+					if (insn == end) break;
+					insn = next;
+				}
+			} else if (!site._copy && reused.contains(site._key)) {
+				InsnList store = new InsnList();
+				store.add(new InsnNode(site._type.getSize() == 2 ? DUP2 : DUP));
+				store.add(new VarInsnNode(site._type.getOpcode(ISTORE), local(site)));
+				instructions.insert(site._last, store);
+			}
+		}
+		return !reused.isEmpty();
+	}
+}
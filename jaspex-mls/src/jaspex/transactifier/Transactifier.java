@@ -78,6 +78,9 @@ public class Transactifier {
 		cr = new ClassReader(cw.toByteArray());
 		currentClass = InfoClass.fromType(Type.fromAsm(cr.getClassName()));
 		_JDKClass = JDKClass;
+
+		// Classes que não estavam no classpath podem escrever em fields considerados efectivamente final
+		if (Options.EFFECTIVELYFINAL && !_JDKClass) EffectivelyFinalFields.classLoaded(cr);
 	}
 
 	public byte[] transform() throws IOException {
@@ -122,7 +125,10 @@ public class Transactifier {
 	}
 
 	private byte[] transactify() throws IOException {
-		final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		// Com -loadelimination são criadas novas variáveis locais, que têm de aparecer nas frames, e com
+		// -indybarriers a classe passa a ser Java 7, logo as frames têm de estar sempre correctas
+		final ClassWriter cw = ((Options.LOADELIMINATION || Options.INDYBARRIERS) && !_JDKClass) ?
+			new jaspex.util.ClassWriter(ClassWriter.COMPUTE_FRAMES) : new ClassWriter(ClassWriter.COMPUTE_MAXS);
 
 		// Copiar métodos originais inalterados
 		cr.accept(new ClassVisitor(Opcodes.ASM4) {
@@ -177,6 +183,16 @@ public class Transactifier {
 		// Adicionar overrides a alguns métodos de java.lang.Object
 		cv = new AddObjectMethodsClassVisitor(cv, currentClass);
 
+		// Converter barreiras de leitura em invokedynamic (trabalha sobre o output dos visitors abaixo)
+		if (Options.INDYBARRIERS && !_JDKClass) {
+			cv = new GenericMethodVisitorAdapter(cv, IndyBarrierMethodVisitor.class);
+		}
+
+		// Reutilizar leituras transaccionais redundantes (trabalha sobre o output dos visitors abaixo)
+		if (Options.LOADELIMINATION && !_JDKClass) {
+			cv = new GenericMethodVisitorAdapter(cv, RedundantLoadEliminationMethodVisitor.class, currentClass);
+		}
+
 		// Suporte para Arrays
 		cv = new GenericMethodVisitorAdapter(cv, ChangeArrayAccessMethodVisitor.class, currentClass, _JDKClass);
 
@@ -190,6 +206,12 @@ public class Transactifier {
 		// Alterar acessos a fields para passarem pela STM
 		cv = new GenericMethodVisitorAdapter(cv, ChangeFieldAccessMethodVisitor.class, currentClass, _JDKClass);
 
+		// Marcar acessos a objectos locais, que o ChangeFieldAccessMethodVisitor e o
+		// ChangeArrayAccessMethodVisitor deixam inalterados
+		if (Options.ESCAPEANALYSIS && !_JDKClass) {
+			cv = new GenericMethodVisitorAdapter(cv, EscapeAnalysisMethodVisitor.class, currentClass);
+		}
+
 		// Modificar string com filename da classe que aparece em excepções
 		if (!_JDKClass) cv = new MarkAsTransactifiedClassVisitor(cv);
 
@@ -211,6 +233,9 @@ public class Transactifier {
 					Log.warn("Class " + name + " is compiled for Java 7 or newer");
 				}
 
+				// invokedynamic só pode ser usado a partir de Java 7
+				if (Options.INDYBARRIERS && version < Opcodes.V1_7) version = Opcodes.V1_7;
+
 				super.visit(version, access, name, signature, superName, interfaces);
 			}
 		};
@@ -0,0 +1,59 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package test;
+
+/** Teste de acessos a elementos consecutivos de arrays dentro de especulações (range entries na STM) **/
+public class NewSpecExample86 {
+
+	private NewSpecExample86() { }
+
+	private static final int[] _values = new int[64];
+	private static final double[] _doubles = new double[64];
+
+	private static int fill(int from, int to) {
+		for (int i = from; i < to; i++) _values[i] = i * 2;
+		return to;
+	}
+
+	private static int compute() {
+		return 42;
+	}
+
+	public static void main(String[] args) {
+		fill(0, 32);
+
+		// Escritas consecutivas, seguidas de uma escrita de um futuro para o meio do range
+		for (int i = 36; i < 48; i++) _values[i] = -i;
+		_values[40] = compute();
+		fill(30, 38);
+
+		for (int i = 0; i < _doubles.length; i++) _doubles[i] = _values[i] / 2.0;
+
+		int total = 0;
+		for (int i = 0; i < _values.length; i++) total += _values[i];
+		double sum = 0;
+		for (int i = _doubles.length - 1; i >= 0; i--) sum += _doubles[i];
+
+		System.out.println(total + " " + sum + " " + _values[40]);
+	}
+
+}
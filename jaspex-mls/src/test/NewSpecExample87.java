@@ -0,0 +1,58 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package test;
+
+import java.util.Arrays;
+
+/** Teste do System.arraycopy dentro de especulações, incluindo cópias com sobreposição e leituras do
+  * destino depois da cópia
+  **/
+public class NewSpecExample87 {
+
+	private NewSpecExample87() { }
+
+	private static final int[] _array = new int[32];
+	private static final long[] _other = new long[32];
+
+	private static void init() {
+		for (int i = 0; i < _array.length; i++) _array[i] = i;
+	}
+
+	private static void shift(int from, int to, int length) {
+		System.arraycopy(_array, from, _array, to, length);
+	}
+
+	public static void main(String[] args) {
+		init();
+		shift(0, 4, 20);
+		_array[10] = -1;
+		shift(8, 2, 12);
+		int sum = 0;
+		for (int i = 0; i < _array.length; i++) sum += _array[i];
+		init();
+		long[] copy = new long[] { 1, 2, 3, 4 };
+		System.arraycopy(copy, 0, _other, 30, 2);
+		System.arraycopy(_other, 30, _other, 0, 2);
+		System.out.println(sum + " " + Arrays.toString(_array) + " " + Arrays.toString(_other));
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * jaspex-mls: a Java Software Speculative Parallelization Framework
+ * Copyright (C) 2015 Ivo Anjo <ivo.anjo@ist.utl.pt>
+ *
+ * This file is part of jaspex-mls.
+ *
+ * jaspex-mls is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * jaspex-mls is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with jaspex-mls.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package test;
+
+/** Teste do -loadelimination: leituras repetidas, leituras movidas para fora de ciclos, escritas e
+  * invocações que impedem a reutilização, ciclos que esperam por um field volatile, e leituras de
+  * fields static de outras classes em ciclos que podem não ser executados
+  **/
+public class NewSpecExample88 {
+
+	private NewSpecExample88() { }
+
+	private static final class Lazy {
+		static int _value = init();
+
+		private static int init() {
+			System.out.println("Lazy initialized");
+			return 7;
+		}
+	}
+
+	private static final class Setter extends Thread {
+		private final NewSpecExample88 _target;
+
+		Setter(NewSpecExample88 target) {
+			_target = target;
+		}
+
+		@Override
+		public void run() {
+			_target._done = true;
+		}
+	}
+
+	private static int _scale = 3;
+
+	private int _count;
+	private int[] _data = new int[16];
+	volatile boolean _done;
+
+	// Leituras do this._data e do _scale podem ser movidas para antes do ciclo
+	private int sumData() {
+		int total = 0;
+		for (int i = 0; i < _data.length; i++) total += _data[i] * _scale;
+		return total;
+	}
+
+	// A escrita no _count obriga a voltar a lê-lo
+	private int repeated() {
+		int a = _count + _count;
+		_count = a;
+		return a + _count;
+	}
+
+	private void bump() {
+		_count++;
+	}
+
+	// A invocação do bump() obriga a voltar a ler o _count
+	private int withCall() {
+		int a = _count;
+		bump();
+		return a + _count;
+	}
+
+	// Com n == 0, a classe Lazy não pode ser inicializada
+	private static int lazy(int n) {
+		int total = 0;
+		for (int i = 0; i < n; i++) total += Lazy._value;
+		return total;
+	}
+
+	// O field volatile tem que ser lido em cada iteração
+	private void spin() {
+		new Setter(this).start();
+		while (!_done) { }
+	}
+
+	public static void main(String[] args) {
+		NewSpecExample88 test = new NewSpecExample88();
+		for (int i = 0; i < test._data.length; i++) test._data[i] = i;
+
+		int sum = test.sumData();
+		test._count = 5;
+		int r = test.repeated();
+		int c = test.withCall();
+		System.out.println("Before lazy");
+		int l0 = lazy(0);
+		System.out.println("After lazy(0)");
+		int l2 = lazy(2);
+		test.spin();
+
+		System.out.println(sum + " " + r + " " + c + " " + l0 + " " + l2 + " " + test._done);
+	}
+
+}